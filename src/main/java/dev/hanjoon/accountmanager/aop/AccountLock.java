@@ -0,0 +1,17 @@
+package dev.hanjoon.accountmanager.aop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Serializes the annotated method per account number.
+ * The method must take a single {@link AccountLockIdInterface} argument.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface AccountLock {
+}
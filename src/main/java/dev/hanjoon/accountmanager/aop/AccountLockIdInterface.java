@@ -0,0 +1,5 @@
+package dev.hanjoon.accountmanager.aop;
+
+public interface AccountLockIdInterface {
+    String getAccountNumber();
+}
@@ -0,0 +1,60 @@
+package dev.hanjoon.accountmanager.aop;
+
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.service.LockService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Holds the account lock around the whole {@code @Transactional} call,
+ * so the lock is released only after the transaction has been committed.
+ */
+@Aspect
+@Component
+@Order(2)
+@RequiredArgsConstructor
+public class LockAopAspect {
+    private final LockService lockService;
+    private final MeterRegistry meterRegistry;
+
+    @Around("@annotation(dev.hanjoon.accountmanager.aop.AccountLock) && args(request)")
+    public Object aroundMethod(ProceedingJoinPoint pjp, AccountLockIdInterface request) throws Throwable {
+        String accountNumber = request.getAccountNumber();
+        long waitStartedAt = System.nanoTime();
+        try {
+            lockService.lock(accountNumber);
+        } catch (TransactionException e) {
+            recordWait("timeout", waitStartedAt);
+            throw e;
+        }
+        long acquiredAt = recordWait("acquired", waitStartedAt);
+        try {
+            return pjp.proceed();
+        } finally {
+            lockService.unlock(accountNumber);
+            Timer.builder("account.lock.hold")
+                 .description("Time an account lock was held")
+                 .register(meterRegistry)
+                 .record(System.nanoTime() - acquiredAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private long recordWait(String result, long waitStartedAt) {
+        long now = System.nanoTime();
+        Timer.builder("account.lock.wait")
+             .description("Time spent waiting for an account lock")
+             .tag("result", result)
+             .register(meterRegistry)
+             .record(now - waitStartedAt, TimeUnit.NANOSECONDS);
+        return now;
+    }
+}
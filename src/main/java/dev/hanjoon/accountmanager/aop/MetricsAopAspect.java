@@ -0,0 +1,91 @@
+package dev.hanjoon.accountmanager.aop;
+
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.AfterThrowing;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchItem;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Times every call into {@code AccountService} and {@code TransactionService} from the outside,
+ * lock waits and retries included, and counts the requests each endpoint refuses by error code.
+ */
+@Aspect
+@Component
+@Order(-1)
+@RequiredArgsConstructor
+public class MetricsAopAspect {
+    private final MeterRegistry meterRegistry;
+
+    @Around("execution(public * dev.hanjoon.accountmanager.service.AccountService.*(..))"
+            + " || execution(public * dev.hanjoon.accountmanager.service.TransactionService.*(..))")
+    public Object timeServiceCall(ProceedingJoinPoint pjp) throws Throwable {
+        long startedAt = System.nanoTime();
+        String result = "ok";
+        try {
+            return pjp.proceed();
+        } catch (Throwable e) {
+            ErrorCode errorCode = errorCodeOf(e);
+            result = errorCode == null ? e.getClass().getSimpleName() : errorCode.name();
+            throw e;
+        } finally {
+            Timer.builder("service.calls")
+                 .description("Time spent in a service method")
+                 .tag("class", pjp.getSignature().getDeclaringType().getSimpleName())
+                 .tag("method", pjp.getSignature().getName())
+                 .tag("result", result)
+                 .register(meterRegistry)
+                 .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @AfterThrowing(pointcut = "within(dev.hanjoon.accountmanager.controller..*)", throwing = "e")
+    public void countRejection(Throwable e) {
+        ErrorCode errorCode = errorCodeOf(e);
+        if (errorCode != null)
+            countRejection(errorCode);
+    }
+
+    /**
+     * Batch endpoints refuse requests one by one in their results.
+     */
+    @AfterReturning(pointcut = "within(dev.hanjoon.accountmanager.controller..*)", returning = "response")
+    public void countBatchRejections(Object response) {
+        if (response instanceof SpendBalanceBatchResponse spends) {
+            for (SpendBalanceBatchItem item : spends.getResults())
+                if (item.getErrorCode() != null)
+                    countRejection(item.getErrorCode());
+        } else if (response instanceof AbortTransactionBatchResponse aborts) {
+            for (AbortTransactionBatchItem item : aborts.getResults())
+                if (item.getErrorCode() != null)
+                    countRejection(item.getErrorCode());
+        }
+    }
+
+    private void countRejection(ErrorCode errorCode) {
+        meterRegistry.counter("requests.rejected", "code", errorCode.name()).increment();
+    }
+
+    private static ErrorCode errorCodeOf(Throwable e) {
+        if (e instanceof AccountException accountException)
+            return accountException.getErrorCode();
+        if (e instanceof TransactionException transactionException)
+            return transactionException.getErrorCode();
+        return null;
+    }
+}
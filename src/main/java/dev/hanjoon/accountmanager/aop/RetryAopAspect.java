@@ -0,0 +1,74 @@
+package dev.hanjoon.accountmanager.aop;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs outside {@link LockAopAspect} and the transaction, so every attempt takes the account lock again and
+ * re-reads the account in a transaction of its own, and the backoff between attempts does not hold the lock.
+ * Conflicts are counted per method and result; the accounts they happen on are only logged,
+ * as a tag per account would make a new time series for every account.
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(1)
+@RequiredArgsConstructor
+public class RetryAopAspect {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${account-manager.retry.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${account-manager.retry.backoff-ms}")
+    private long backoffMs;
+
+    @Around("@annotation(dev.hanjoon.accountmanager.aop.RetryOnConflict)")
+    public Object aroundMethod(ProceedingJoinPoint pjp) throws Throwable {
+        String method = pjp.getSignature().getName();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return pjp.proceed();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                String accountNumber = getAccountNumber(pjp.getArgs());
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("account.optimistic.conflicts", "method", method,
+                                          "result", "exhausted").increment();
+                    log.warn("{} on account {} gave up after {} optimistic lock conflicts",
+                             method, accountNumber, attempt);
+                    throw e;
+                }
+                meterRegistry.counter("account.optimistic.conflicts", "method", method,
+                                      "result", "retried").increment();
+                meterRegistry.counter("account.optimistic.retries", "method", method).increment();
+                log.debug("{} on account {} retried after optimistic lock conflict {}", method, accountNumber, attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) throws InterruptedException {
+        // full jitter over an exponentially growing window spreads out the competing retries
+        long window = backoffMs << Math.min(attempt - 1, 10);
+        Thread.sleep(ThreadLocalRandom.current().nextLong(window + 1));
+    }
+
+    private String getAccountNumber(Object[] args) {
+        for (Object arg : args)
+            if (arg instanceof AccountLockIdInterface request && request.getAccountNumber() != null)
+                return request.getAccountNumber();
+        return "unknown";
+    }
+}
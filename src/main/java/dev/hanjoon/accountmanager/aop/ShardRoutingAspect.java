@@ -0,0 +1,53 @@
+package dev.hanjoon.accountmanager.aop;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.service.ShardDirectory;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Routes account writes to the shard of the account before the lock is taken and the transaction begins,
+ * and account creation to the client's home shard.
+ */
+@Aspect
+@Component
+@Order(0)
+@ConditionalOnProperty(name = "account-manager.sharding.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ShardRoutingAspect {
+    private final ShardDirectory shardDirectory;
+
+    @Around("@annotation(dev.hanjoon.accountmanager.aop.AccountLock) && args(request)")
+    public Object routeByAccount(ProceedingJoinPoint pjp, AccountLockIdInterface request) throws Throwable {
+        if (request.getAccountNumber() == null)
+            return pjp.proceed();
+        int slot = ShardDirectory.slotOf(request.getAccountNumber());
+        // entered first, so the slot cannot move to another shard until the call is done
+        shardDirectory.enter(slot);
+        Integer previous = ShardDirectory.route(shardDirectory.shardOfSlot(slot));
+        try {
+            return pjp.proceed();
+        } finally {
+            ShardDirectory.restore(previous);
+            shardDirectory.exit(slot);
+        }
+    }
+
+    @Around("execution(* dev.hanjoon.accountmanager.service.AccountService.createAccount(..)) && args(request)")
+    public Object routeByClient(ProceedingJoinPoint pjp, CreateAccountRequest request) throws Throwable {
+        if (request.getClientUsername() == null)
+            return pjp.proceed();
+        Integer previous = ShardDirectory.route(shardDirectory.homeShardOf(request.getClientUsername()));
+        try {
+            return pjp.proceed();
+        } finally {
+            ShardDirectory.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package dev.hanjoon.accountmanager.config;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * For pools hidden behind a routing datasource, which Boot does not see.
+ */
+public final class DataSourcePools {
+    private DataSourcePools() {
+    }
+
+    /**
+     * Names the pool and publishes its hikaricp gauges, as Boot does for a pool that is a bean itself.
+     */
+    public static DataSource named(DataSource dataSource, String name, MeterRegistry meterRegistry) {
+        if (dataSource instanceof HikariDataSource hikari) {
+            hikari.setPoolName(name);
+            hikari.setMetricRegistry(meterRegistry);
+        }
+        return dataSource;
+    }
+}
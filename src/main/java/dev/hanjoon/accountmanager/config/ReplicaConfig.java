@@ -0,0 +1,57 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Serves read-only transactions from the databases in {@code account-manager.replica.urls},
+ * which use the credentials of spring.datasource and are kept up to date by something else,
+ * such as {@link ReplicationStandIn}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "account-manager.replica.enabled", havingValue = "true")
+public class ReplicaConfig {
+    @Value("${account-manager.replica.urls}")
+    private List<String> replicaUrls;
+
+    @Value("${account-manager.replica.max-lag-ms}")
+    private long maxLagMs;
+
+    @Value("${account-manager.sharding.enabled}")
+    private boolean sharding;
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties,
+                                                            MeterRegistry meterRegistry) {
+        if (sharding)
+            throw new IllegalStateException("Replicas are not supported together with sharding");
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls)
+            replicas.add(DataSourcePools.named(properties.initializeDataSourceBuilder().url(url).build(),
+                                               "replica-" + replicas.size(), meterRegistry));
+        DataSource primary = DataSourcePools.named(properties.initializeDataSourceBuilder().build(),
+                                                   "primary", meterRegistry);
+        return new ReplicaRoutingDataSource(primary, replicas, maxLagMs);
+    }
+
+    /**
+     * Takes the connection on the first statement, once the transaction has been marked read-only.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,77 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stamps the time into replica_heartbeat on the primary and reads it back from every replica:
+ * the age of a replica's copy bounds how far behind the primary it is.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "account-manager.replica.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReplicaLagMonitor implements SmartLifecycle {
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Value("${account-manager.replica.heartbeat-interval-ms}")
+    private long heartbeatIntervalMs;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::measure, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void measure() {
+        try {
+            new JdbcTemplate(replicaRoutingDataSource.getPrimary()).update(
+                "update replica_heartbeat set beat_at = ? where id = 1", System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("Could not write the replica heartbeat", e);
+        }
+        for (int replica = 0; replica < replicaRoutingDataSource.getReplicas().size(); replica++) {
+            long lag;
+            try {
+                Long beatAt = new JdbcTemplate(replicaRoutingDataSource.getReplicas().get(replica)).queryForObject(
+                    "select beat_at from replica_heartbeat where id = 1", Long.class);
+                lag = Math.max(0L, System.currentTimeMillis() - beatAt);
+            } catch (RuntimeException e) {
+                lag = Long.MAX_VALUE;
+            }
+            long previous = replicaRoutingDataSource.getLagMs(replica);
+            if ((previous == Long.MAX_VALUE) != (lag == Long.MAX_VALUE))
+                log.info("Replica {} is {}", replica, lag == Long.MAX_VALUE ? "unreachable" : "reachable");
+            replicaRoutingDataSource.setLagMs(replica, lag);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands out connections to a replica inside read-only transactions and to the primary otherwise.
+ * Replicas take turns, and one is skipped while it is further behind the primary than the tolerated lag,
+ * as last measured by {@link ReplicaLagMonitor}, or could not be connected to.
+ * When no replica qualifies the primary serves the read.
+ * <p>
+ * The transaction must be known to be read-only when the connection is taken,
+ * so this sits behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final long maxLagMs;
+    // unknown until the first measurement
+    private final AtomicLongArray lagMs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagMs) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxLagMs = maxLagMs;
+        this.lagMs = new AtomicLongArray(replicas.size());
+        for (int replica = 0; replica < replicas.size(); replica++)
+            lagMs.set(replica, Long.MAX_VALUE);
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public long getLagMs(int replica) {
+        return lagMs.get(replica);
+    }
+
+    /**
+     * @param lag Long.MAX_VALUE if the replica could not be measured
+     */
+    public void setLagMs(int replica, long lag) {
+        lagMs.set(replica, lag);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(target -> target.getConnection(username, password));
+    }
+
+    private interface ConnectionOpener {
+        Connection open(DataSource target) throws SQLException;
+    }
+
+    private Connection route(ConnectionOpener opener) throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            int start = next.getAndIncrement();
+            for (int i = 0; i < replicas.size(); i++) {
+                int replica = Math.floorMod(start + i, replicas.size());
+                if (lagMs.get(replica) > maxLagMs)
+                    continue;
+                try {
+                    return opener.open(replicas.get(replica));
+                } catch (SQLException e) {
+                    log.warn("Replica {} is unreachable, reading elsewhere", replica, e);
+                    lagMs.set(replica, Long.MAX_VALUE);
+                }
+            }
+        }
+        return opener.open(primary);
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<DataSource> all = new ArrayList<>(replicas);
+        all.add(primary);
+        for (DataSource dataSource : all)
+            if (dataSource instanceof Closeable closeable)
+                closeable.close();
+    }
+}
@@ -0,0 +1,106 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Feeds local replicas that nothing else replicates to, such as a second in-memory H2 database:
+ * migrates them like the primary, then copies every table of the primary into them at a fixed interval.
+ * Rows are merged by id and never deleted. Each copy is applied in a single transaction,
+ * with the heartbeat read before the tables, so a replica is never newer than its heartbeat says.
+ * Every copy reads whole tables, so this is for local use only.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "account-manager.replica.stand-in.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReplicationStandIn implements SmartLifecycle {
+    private static final List<String> TABLES = List.of("client", "account", "transaction");
+
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+    private final Flyway flyway;
+
+    @Value("${account-manager.replica.stand-in.interval-ms}")
+    private long intervalMs;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        for (DataSource replica : replicaRoutingDataSource.getReplicas())
+            Flyway.configure()
+                  .configuration(flyway.getConfiguration())
+                  .dataSource(replica)
+                  .load()
+                  .migrate();
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "replication-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::replicate, 0, intervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void replicate() {
+        try {
+            JdbcTemplate primary = new JdbcTemplate(replicaRoutingDataSource.getPrimary());
+            Long beatAt = primary.queryForObject("select beat_at from replica_heartbeat where id = 1", Long.class);
+            List<List<Map<String, Object>>> tables = new ArrayList<>();
+            for (String table : TABLES)
+                tables.add(primary.queryForList("select * from " + table));
+            for (DataSource replica : replicaRoutingDataSource.getReplicas()) {
+                JdbcTemplate target = new JdbcTemplate(replica);
+                new TransactionTemplate(new DataSourceTransactionManager(replica)).executeWithoutResult(status -> {
+                    for (int i = 0; i < TABLES.size(); i++)
+                        merge(target, TABLES.get(i), tables.get(i));
+                    target.update("update replica_heartbeat set beat_at = ? where id = 1", beatAt);
+                });
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not copy the primary into the replicas", e);
+        }
+    }
+
+    private static void merge(JdbcTemplate jdbcTemplate, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty())
+            return;
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows)
+            values.add(columns.stream().map(row::get).toArray());
+        jdbcTemplate.batchUpdate("merge into " + table + " (" + String.join(", ", columns) + ") key (id) values ("
+                                 + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")", values);
+    }
+}
@@ -0,0 +1,47 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import dev.hanjoon.accountmanager.service.ShardDirectory;
+
+/**
+ * Hands out connections to the shard the calling thread is routed to by {@link ShardDirectory},
+ * shard 0 when it is not routed anywhere. The shard is picked when a connection is taken,
+ * which for a transaction is when it begins.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++)
+            targets.put(shard, shards.get(shard));
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardDirectory.currentShard();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataSource shard : shards)
+            if (shard instanceof Closeable closeable)
+                closeable.close();
+    }
+}
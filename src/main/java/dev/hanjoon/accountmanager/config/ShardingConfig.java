@@ -0,0 +1,56 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Spreads accounts over several databases: spring.datasource is shard 0 and every url in
+ * {@code account-manager.sharding.urls} is one more, with the same credentials and schema.
+ */
+@Configuration
+@ConditionalOnProperty(name = "account-manager.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+    @Value("${account-manager.sharding.urls}")
+    private List<String> shardUrls;
+
+    @Value("${account-manager.transaction.mode}")
+    private String transactionMode;
+
+    @Bean
+    public ShardRoutingDataSource dataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        // the journal and the engine write through a single connection per batch
+        if (!"direct".equals(transactionMode))
+            throw new IllegalStateException("Sharding needs account-manager.transaction.mode=direct");
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(DataSourcePools.named(properties.initializeDataSourceBuilder().build(),
+                                         "shard-0", meterRegistry));
+        for (String url : shardUrls)
+            shards.add(DataSourcePools.named(properties.initializeDataSourceBuilder().url(url).build(),
+                                             "shard-" + shards.size(), meterRegistry));
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource dataSource) {
+        return flyway -> {
+            for (DataSource shard : dataSource.getShards())
+                Flyway.configure()
+                      .configuration(flyway.getConfiguration())
+                      .dataSource(shard)
+                      .load()
+                      .migrate();
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Writes JSON responses like the converter it replaces and times each one as "http.server.serialization",
+ * which tells serialization apart from the rest of a request.
+ */
+public class TimedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    private final MeterRegistry meterRegistry;
+
+    public TimedJsonHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+        throws IOException, HttpMessageNotWritableException {
+        long startedAt = System.nanoTime();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            Timer.builder("http.server.serialization")
+                 .description("Time spent writing a response body as JSON")
+                 .tag("type", object.getClass().getSimpleName())
+                 .register(meterRegistry)
+                 .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.redisson.config.Config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 
 @Configuration
 public class TransactionRepositoryConfig {
@@ -16,6 +17,7 @@ public class TransactionRepositoryConfig {
     private int redisPort;
 
     @Bean
+    @DependsOn("localRedisConfig")
     public RedissonClient redissonClient() {
         Config config = new Config();
         config.useSingleServer().setAddress("redis://" + redisHost + ":" + redisPort);
@@ -0,0 +1,23 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs Tomcat requests on a virtual thread each, when account-manager.threads.virtual is true.
+ * The JDBC pool then becomes the limit on concurrent database work, instead of Tomcat's thread pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "account-manager.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+}
@@ -0,0 +1,44 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Looks up {@code Executors.newVirtualThreadPerTaskExecutor} at runtime, so that the build keeps
+ * targeting Java 18 while a newer JVM can still run the app on virtual threads.
+ */
+public final class VirtualThreads {
+    private static final MethodHandle NEW_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    public static ExecutorService newThreadPerTaskExecutor() {
+        if (!isSupported())
+            throw new IllegalStateException("Virtual threads need Java 21, or Java 19 with --enable-preview");
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    private static MethodHandle findFactory() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(
+                Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            // preview builds have the method but throw unless preview features are enabled
+            ((ExecutorService) factory.invoke()).shutdown();
+            return factory;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Async request handling for streamed responses such as the transaction export, and timed JSON responses.
+ * {@code @EnableWebMvc} turns off Boot's spring.mvc.async properties, so it is set up here.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class WebMvcConfig implements WebMvcConfigurer {
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${account-manager.export.timeout-ms}")
+    private long exportTimeoutMs;
+
+    @Value("${account-manager.export.pool-size}")
+    private int exportPoolSize;
+
+    @Value("${account-manager.threads.virtual}")
+    private boolean virtualThreads;
+
+    @Bean
+    public AsyncTaskExecutor exportTaskExecutor() {
+        if (virtualThreads)
+            return new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(exportPoolSize);
+        executor.setMaxPoolSize(exportPoolSize);
+        executor.setThreadNamePrefix("export-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(exportTimeoutMs)
+                  .setTaskExecutor(exportTaskExecutor());
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // slice tests run without metrics
+        MeterRegistry meterRegistry = this.meterRegistry.getIfAvailable();
+        if (meterRegistry == null)
+            return;
+        for (int i = 0; i < converters.size(); i++)
+            if (converters.get(i) instanceof MappingJackson2HttpMessageConverter json)
+                converters.set(i, new TimedJsonHttpMessageConverter(json.getObjectMapper(), meterRegistry));
+    }
+}
@@ -1,10 +1,14 @@
 package dev.hanjoon.accountmanager.controller;
 
+import java.time.LocalDateTime;
+
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
@@ -12,7 +16,10 @@ import dev.hanjoon.accountmanager.dto.CreateAccountResponse;
 import dev.hanjoon.accountmanager.dto.CloseAccountRequest;
 import dev.hanjoon.accountmanager.dto.CloseAccountResponse;
 import dev.hanjoon.accountmanager.dto.ListAccountResponse;
+import dev.hanjoon.accountmanager.dto.TransactionHistoryResponse;
 import dev.hanjoon.accountmanager.service.AccountService;
+import dev.hanjoon.accountmanager.service.TransactionService;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import jakarta.validation.Valid;
@@ -22,6 +29,7 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class AccountController {
     private final AccountService accountService;
+    private final TransactionService transactionService;
 
     @Operation(summary = "Create an account",
                description = "Create an account if;<br>"
@@ -63,4 +71,21 @@ public class AccountController {
         @PathVariable String clientUsername) {
         return accountService.listAccount(clientUsername);
     }
+
+    @Operation(summary = "Retrieve the transactions made on the account",
+               description = "Retrieve the transactions made on the account, newest first, one page at a time.<br>"
+               + "Pass nextCursor of a page as cursor to get the page after it, keeping the other parameters as they were.<br>"
+               + "nextCursor is missing on the last page.<br>"
+               + "from is inclusive and to is exclusive, both in ISO date time format (e.g. 2022-08-01T00:00:00)")
+    @GetMapping(value = "api/account/{accountNumber}/transactions", produces = "application/json")
+    public TransactionHistoryResponse getTransactionHistory(
+        @Parameter(required=true, example = "1000000001")
+        @PathVariable String accountNumber,
+        @RequestParam(required = false) TransactionStatus status,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false) Integer size) {
+        return transactionService.getTransactionHistory(accountNumber, status, from, to, cursor, size);
+    }
 }
@@ -0,0 +1,79 @@
+package dev.hanjoon.accountmanager.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import dev.hanjoon.accountmanager.dto.MoveSlotsRequest;
+import dev.hanjoon.accountmanager.dto.MoveSlotsResponse;
+import dev.hanjoon.accountmanager.service.ShardRebalancer;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Operator endpoints of a sharded deployment. A request has to carry account-manager.sharding.admin-token
+ * in the X-Admin-Token header, and every request is refused while no token is configured.
+ */
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "account-manager.sharding.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ShardAdminController {
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private final ShardRebalancer shardRebalancer;
+
+    @Value("${account-manager.sharding.admin-token}")
+    private String adminToken;
+
+    @Operation(summary = "Move slots to another shard",
+               description = "Move the accounts of slots fromSlot to toSlot (inclusive, 0 to 1023), with their transactions, "
+               + "to targetShard (0 is spring.datasource).<br>"
+               + "Writes to the moving accounts are refused until the move is over, on this node only.<br>"
+               + "Responds 403 without the admin token, 400 on an invalid range or shard "
+               + "and 409 if requests on the slots did not finish in time.")
+    @PostMapping(value = "admin/shard/slots", produces = "application/json")
+    public MoveSlotsResponse moveSlots(
+        @RequestHeader(value = TOKEN_HEADER, required = false) String token,
+        @RequestBody @Valid MoveSlotsRequest request) throws InterruptedException {
+        if (!authorized(token)) {
+            log.warn("Refused to move slots {}-{} to shard {} without a valid admin token",
+                     request.getFromSlot(), request.getToSlot(), request.getTargetShard());
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        log.info("Moving slots {}-{} to shard {} on request",
+                 request.getFromSlot(), request.getToSlot(), request.getTargetShard());
+        int moved;
+        try {
+            moved = shardRebalancer.moveSlots(request.getFromSlot(), request.getToSlot(), request.getTargetShard());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+        return MoveSlotsResponse.builder()
+                                .fromSlot(request.getFromSlot())
+                                .toSlot(request.getToSlot())
+                                .targetShard(request.getTargetShard())
+                                .movedAccounts(moved)
+                                .build();
+    }
+
+    // compared in constant time, so that the response time does not give the token away
+    private boolean authorized(String token) {
+        if (adminToken.isEmpty() || token == null)
+            return false;
+        return MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8),
+                                     token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,16 +1,30 @@
 package dev.hanjoon.accountmanager.controller;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
 import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
 import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
 import dev.hanjoon.accountmanager.dto.CheckTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
 import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
 import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.service.IdempotencyService;
+import dev.hanjoon.accountmanager.service.TransactionExportService;
+import dev.hanjoon.accountmanager.service.TransactionProcessor;
 import dev.hanjoon.accountmanager.service.TransactionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -21,21 +35,56 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class TransactionController {
     private final TransactionService transactionService;
+    private final TransactionProcessor transactionProcessor;
+    private final IdempotencyService idempotencyService;
+    private final TransactionExportService transactionExportService;
 
     @Operation(summary = "Spend balance",
-               description = "")
+               description = "Requests retried with the same Idempotency-Key header get the response of the first one"
+               + " instead of spending again.<br>"
+               + "A key belongs to the client; reusing it for a different request fails with IDEMPOTENCY_KEY_REUSED.")
     @PostMapping(value = "api/transaction/spend", produces = "application/json")
     public SpendBalanceResponse spendBalance(
+        @Parameter(example = "3f1c8e0e-6a4b-4cde-9d7b-3b1e2a9c5f10")
+        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
         @RequestBody @Valid SpendBalanceRequest request) {
-        return transactionService.spendBalance(request);
+        return idempotencyService.execute("spend", request.getClientUsername(), idempotencyKey, request,
+            SpendBalanceResponse.class, () -> transactionProcessor.spendBalance(request));
+    }
+
+    @Operation(summary = "Spend balance in bulk",
+               description = "Spend balance for every request in the list.<br>"
+               + "Requests on the same account are applied together in one database transaction, in the order given.<br>"
+               + "Each result holds either the response or the errorCode of the request at the same position;"
+               + " a failed request does not affect the others.")
+    @PostMapping(value = "api/transaction/spend/batch", produces = "application/json")
+    public SpendBalanceBatchResponse spendBalances(
+        @RequestBody List<@Valid SpendBalanceRequest> requests) {
+        return transactionProcessor.spendBalances(requests);
     }
 
     @Operation(summary = "Abort transaction",
-               description = "")
+               description = "Requests retried with the same Idempotency-Key header get the response of the first one"
+               + " instead of failing with TRANSACTION_NOT_COMMITTED.<br>"
+               + "A key belongs to the account; reusing it for a different request fails with IDEMPOTENCY_KEY_REUSED.")
     @PostMapping(value = "api/transaction/abort", produces = "application/json")
     public AbortTransactionResponse abortTransaction(
+        @Parameter(example = "0b6f7d2a-1c3e-4f5a-8b9c-7d6e5f4a3b2c")
+        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
         @RequestBody @Valid AbortTransactionRequest request) {
-        return transactionService.abortTransaction(request);
+        return idempotencyService.execute("abort", request.getAccountNumber(), idempotencyKey, request,
+            AbortTransactionResponse.class, () -> transactionProcessor.abortTransaction(request));
+    }
+
+    @Operation(summary = "Abort transactions in bulk",
+               description = "Abort every transaction in the list.<br>"
+               + "Each account is credited once with the sum of its aborted transactions.<br>"
+               + "Each result holds either the response or the errorCode of the request at the same position;"
+               + " a failed request does not affect the requests on other accounts.")
+    @PostMapping(value = "api/transaction/abort/batch", produces = "application/json")
+    public AbortTransactionBatchResponse abortTransactions(
+        @RequestBody List<@Valid AbortTransactionRequest> requests) {
+        return transactionProcessor.abortTransactions(requests);
     }
 
     @Operation(summary = "Check transaction detail",
@@ -46,4 +95,18 @@ public class TransactionController {
         @PathVariable Long transactionId) {
         return transactionService.checkTransaction(transactionId);
     }
+
+    @Operation(summary = "Export transactions",
+               description = "Stream every transaction created between from (inclusive) and to (exclusive)"
+               + " as newline-delimited JSON, one transaction per line in creation order.<br>"
+               + "Both are in ISO date time format (e.g. 2022-08-01T00:00:00)")
+    @GetMapping(value = "api/transaction/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        StreamingResponseBody body = out -> transactionExportService.exportTransactions(from, to, out);
+        return ResponseEntity.ok()
+                             .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                             .body(body);
+    }
 }
@@ -3,18 +3,21 @@ package dev.hanjoon.accountmanager.domain;
 import java.time.LocalDateTime;
 
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import dev.hanjoon.accountmanager.type.AccountStatus;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -30,8 +33,10 @@ import lombok.Setter;
 @EntityListeners(AuditingEntityListener.class)
 public class Account {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "dev.hanjoon.accountmanager.domain.SnowflakeIdGenerator")
     private Long id;
+    @Column(unique = true)
     private String accountNumber;
     @Enumerated(EnumType.STRING)
     private AccountStatus accountStatus;
@@ -41,6 +46,8 @@ public class Account {
     private LocalDateTime createdAt;
     @UpdateTimestamp
     private LocalDateTime updatedAt;
-    @ManyToOne
+    @Version
+    private Long version;
+    @ManyToOne(fetch = FetchType.LAZY)
     private Client client;
 }
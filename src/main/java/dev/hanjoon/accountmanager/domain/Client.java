@@ -3,13 +3,15 @@ package dev.hanjoon.accountmanager.domain;
 import java.time.LocalDateTime;
 
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
+import dev.hanjoon.accountmanager.service.ClientCacheInvalidator;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -23,13 +25,17 @@ import lombok.Setter;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, ClientCacheInvalidator.class})
 public class Client {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "dev.hanjoon.accountmanager.domain.SnowflakeIdGenerator")
     private Long id;
     @Column(unique = true)
     private String username;
+    // non-closed accounts, only changed through ClientRepository so a stale copy can't overwrite it
+    @Column(updatable = false)
+    private int activeAccounts;
     @CreationTimestamp
     private LocalDateTime createdAt;
 }
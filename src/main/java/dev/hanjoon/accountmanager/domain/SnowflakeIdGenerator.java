@@ -0,0 +1,84 @@
+package dev.hanjoon.accountmanager.domain;
+
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Time-ordered 64-bit ids made in the application, so that Hibernate can batch inserts
+ * instead of waiting for an identity column after each one.
+ * An id is the milliseconds since {@link #EPOCH}, the node id and a per-millisecond sequence.
+ * The node id is read from the "account-manager.id.node-id" Hibernate setting.
+ * The clock is shared by every generator in the JVM, so ids made outside Hibernate
+ * with the same node id never collide with the ones Hibernate makes.
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+    public static final String NODE_ID_SETTING = "account-manager.id.node-id";
+    static final long EPOCH = Instant.parse("2022-08-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // a lock rather than synchronized, which would pin a virtual thread to its carrier while waiting
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static long lastTimestamp = -1L;
+    private static long sequence;
+    private long nodeId;
+
+    public SnowflakeIdGenerator() {
+    }
+
+    public SnowflakeIdGenerator(long nodeId) {
+        setNodeId(nodeId);
+    }
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        Object setting = serviceRegistry.getService(ConfigurationService.class)
+                                        .getSettings().get(NODE_ID_SETTING);
+        setNodeId(setting == null ? 0L : Long.parseLong(setting.toString()));
+    }
+
+    private void setNodeId(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID)
+            throw new IllegalArgumentException(NODE_ID_SETTING + " must be between 0 and " + MAX_NODE_ID);
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return nextId();
+    }
+
+    public long nextId() {
+        return nextId(System.currentTimeMillis());
+    }
+
+    /**
+     * Never goes backwards: when the clock does, or the sequence of a millisecond runs out,
+     * ids keep counting on from the last timestamp used.
+     */
+    long nextId(long now) {
+        long timestamp = now - EPOCH;
+        LOCK.lock();
+        try {
+            if (timestamp > lastTimestamp) {
+                lastTimestamp = timestamp;
+                sequence = 0;
+            } else if (++sequence > SEQUENCE_MASK) {
+                lastTimestamp++;
+                sequence = 0;
+            }
+            return (lastTimestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+}
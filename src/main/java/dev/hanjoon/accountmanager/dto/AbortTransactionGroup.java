@@ -0,0 +1,23 @@
+package dev.hanjoon.accountmanager.dto;
+
+import java.util.List;
+
+import dev.hanjoon.accountmanager.aop.AccountLockIdInterface;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Transactions of a batch abort made on the same account, with the sum of their amounts.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AbortTransactionGroup implements AccountLockIdInterface {
+    private String accountNumber;
+    private String clientUsername;
+    private List<Long> transactionIds;
+    private Long amount;
+}
@@ -1,5 +1,6 @@
 package dev.hanjoon.accountmanager.dto;
 
+import dev.hanjoon.accountmanager.aop.AccountLockIdInterface;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -10,7 +11,7 @@ import lombok.Setter;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-public class AbortTransactionRequest {
+public class AbortTransactionRequest implements AccountLockIdInterface {
     @Schema(example = "1")
     private Long transactionId;
     @Schema(example = "1000000000")
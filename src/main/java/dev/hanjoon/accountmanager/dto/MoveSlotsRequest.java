@@ -0,0 +1,24 @@
+package dev.hanjoon.accountmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MoveSlotsRequest {
+    @NotNull
+    @Schema(example = "0")
+    private Integer fromSlot;
+    @NotNull
+    @Schema(example = "1023")
+    private Integer toSlot;
+    @NotNull
+    @Schema(example = "1")
+    private Integer targetShard;
+}
@@ -0,0 +1,23 @@
+package dev.hanjoon.accountmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MoveSlotsResponse {
+    @Schema(example = "0")
+    private int fromSlot;
+    @Schema(example = "1023")
+    private int toSlot;
+    @Schema(example = "1")
+    private int targetShard;
+    private int movedAccounts;
+}
@@ -0,0 +1,27 @@
+package dev.hanjoon.accountmanager.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Outcome of one request of a batch; either response or errorCode is set.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SpendBalanceBatchItem {
+    private SpendBalanceResponse response;
+    @Schema(example = "TRANSACTION_INSUFFICIENT_FUNDS")
+    private ErrorCode errorCode;
+    private String errorMsg;
+}
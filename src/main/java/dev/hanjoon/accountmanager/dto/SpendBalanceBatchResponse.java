@@ -0,0 +1,18 @@
+package dev.hanjoon.accountmanager.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendBalanceBatchResponse {
+    private List<SpendBalanceBatchItem> results;
+}
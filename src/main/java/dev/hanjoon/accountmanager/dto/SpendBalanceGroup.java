@@ -0,0 +1,21 @@
+package dev.hanjoon.accountmanager.dto;
+
+import java.util.List;
+
+import dev.hanjoon.accountmanager.aop.AccountLockIdInterface;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Spend requests of a batch made on the same account, in the order they were received.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendBalanceGroup implements AccountLockIdInterface {
+    private String accountNumber;
+    private List<SpendBalanceRequest> requests;
+}
@@ -1,5 +1,6 @@
 package dev.hanjoon.accountmanager.dto;
 
+import dev.hanjoon.accountmanager.aop.AccountLockIdInterface;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -10,7 +11,7 @@ import lombok.Setter;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-public class SpendBalanceRequest {
+public class SpendBalanceRequest implements AccountLockIdInterface {
     @Schema(example = "clientWithOneAccount")
     private String clientUsername;
     @Schema(example = "1000000000")
@@ -0,0 +1,26 @@
+package dev.hanjoon.accountmanager.dto;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A page of an account's transactions, newest first.
+ * {@code nextCursor} is null on the last page.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionHistoryResponse {
+    @Schema(example = "1000000001")
+    private String accountNumber;
+    private List<TransactionHistoryItem> transactions;
+    private String nextCursor;
+}
@@ -0,0 +1,65 @@
+package dev.hanjoon.accountmanager.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * A producer claims a sequence number with a CAS on the tail and then publishes its element
+ * into the slot of that sequence. The consumer takes slots in sequence order, so an element
+ * whose slot is claimed but not yet published holds back the ones after it until it is.
+ */
+public class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long sequence = tail.get();
+            // the slot is free once the consumer has moved past its previous use
+            if (sequence - head.get() > mask)
+                return false;
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.lazySet((int) sequence & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Consumer side only.
+     *
+     * @return the next element, or null if there is none published yet
+     */
+    public E poll() {
+        long sequence = head.get();
+        int index = (int) sequence & mask;
+        E element = slots.get(index);
+        if (element == null)
+            return null;
+        slots.lazySet(index, null);
+        head.lazySet(sequence + 1);
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+}
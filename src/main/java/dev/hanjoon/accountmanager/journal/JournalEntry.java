@@ -0,0 +1,35 @@
+package dev.hanjoon.accountmanager.journal;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One accepted spend or abort, holding everything needed to write it to the database
+ * without reading anything back.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalEntry {
+    public enum Type {
+        SPEND, ABORT
+    }
+
+    // log sequence number, assigned by the journal on append
+    private long lsn;
+    private Type type;
+    private Long transactionId;
+    private Long accountId;
+    private String accountNumber;
+    private String clientUsername;
+    private Long amount;
+    // creation time of a spend, abort time of an abort
+    private LocalDateTime timestamp;
+}
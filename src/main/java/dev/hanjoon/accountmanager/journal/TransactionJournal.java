@@ -0,0 +1,387 @@
+package dev.hanjoon.accountmanager.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Append-only log of {@link JournalEntry}s in memory-mapped segment files.
+ * <p>
+ * An append only copies the entry into the mapped segment. A flusher thread forces the segment
+ * to disk once for everything appended since its last force (group commit), then passes those
+ * entries to the listener as durable. A record is the payload length, the CRC32 of the payload
+ * and the payload, the entry as JSON, so a record torn by a crash ends the segment on recovery.
+ * <p>
+ * Segments are named after the first sequence number written to them and are rolled when full.
+ * {@link #truncate(long)} deletes the ones whose entries have all been applied.
+ * <p>
+ * A journal has an id, stored next to its segments, for the database checkpoint to name the journal it belongs to.
+ * Once all of its entries have been applied, it can be {@link #delete() deleted} for a new one to be started.
+ */
+public class TransactionJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String ID_FILE = "journal.id";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ObjectMapper objectMapper;
+    private final Consumer<List<JournalEntry>> durableListener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    // oldest first, the last one is written to
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private List<JournalEntry> unsynced = new ArrayList<>();
+    private long nextLsn;
+    private long syncedLsn;
+    private RuntimeException failure;
+    private boolean closed;
+    private Thread flusher;
+
+    public TransactionJournal(Path directory, int segmentBytes, ObjectMapper objectMapper,
+                              Consumer<List<JournalEntry>> durableListener) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.objectMapper = objectMapper;
+        this.durableListener = durableListener;
+    }
+
+    /**
+     * @return the id of the journal in the directory, or null if there is none yet
+     */
+    public String readId() throws IOException {
+        Path file = directory.resolve(ID_FILE);
+        return Files.exists(file) ? Files.readString(file).trim() : null;
+    }
+
+    /**
+     * Starts a new journal in the directory, which must not hold any segments yet.
+     *
+     * @return the id of the new journal
+     */
+    public String createId() throws IOException {
+        Files.createDirectories(directory);
+        if (!segmentFiles().isEmpty())
+            throw new IllegalStateException("Journal in " + directory + " has entries but no id");
+        String id = UUID.randomUUID().toString();
+        Files.writeString(directory.resolve(ID_FILE), id, StandardOpenOption.CREATE_NEW);
+        return id;
+    }
+
+    /**
+     * Deletes the segments and the id of a journal that is not open, leaving the directory to a new journal.
+     */
+    public void delete() throws IOException {
+        if (Files.notExists(directory))
+            return;
+        for (Path file : segmentFiles())
+            Files.delete(file);
+        // last, so that segments are never found without an id
+        Files.deleteIfExists(directory.resolve(ID_FILE));
+    }
+
+    /**
+     * Reads the existing segments, drops the applied ones and starts appending to a new segment.
+     *
+     * @param appliedLsn sequence number of the last entry known to be in the database
+     * @return the entries after {@code appliedLsn}, in order
+     */
+    public List<JournalEntry> open(long appliedLsn) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files = segmentFiles();
+        List<JournalEntry> unapplied = new ArrayList<>();
+        long lastLsn = appliedLsn;
+        for (Path file : files) {
+            List<JournalEntry> entries = read(file);
+            if (entries.isEmpty()) {
+                Files.delete(file);
+                continue;
+            }
+            for (JournalEntry entry : entries) {
+                if (entry.getLsn() > appliedLsn)
+                    unapplied.add(entry);
+                lastLsn = Math.max(lastLsn, entry.getLsn());
+            }
+            segments.addLast(new Segment(file, entries.get(0).getLsn()));
+        }
+        lock.lock();
+        try {
+            nextLsn = lastLsn + 1;
+            syncedLsn = lastLsn;
+            segments.addLast(createSegment(nextLsn));
+        } finally {
+            lock.unlock();
+        }
+        truncate(appliedLsn);
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return unapplied;
+    }
+
+    /**
+     * Assigns the entry its sequence number and writes it, without waiting for it to reach the disk.
+     *
+     * @return the sequence number to pass to {@link #awaitDurable(long)}
+     */
+    public long append(JournalEntry entry) {
+        lock.lock();
+        try {
+            checkWritable();
+            entry.setLsn(nextLsn);
+            byte[] payload = serialize(entry);
+            if (HEADER_BYTES + payload.length > segmentBytes)
+                throw new IllegalArgumentException("Journal entry is larger than a segment");
+            Segment active = segments.getLast();
+            if (active.buffer.remaining() < HEADER_BYTES + payload.length)
+                active = roll();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            active.buffer.putInt(payload.length)
+                         .putInt((int) crc.getValue())
+                         .put(payload);
+            unsynced.add(entry);
+            appended.signal();
+            return nextLsn++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the entry with the given sequence number has been forced to disk.
+     */
+    public void awaitDurable(long lsn) {
+        lock.lock();
+        try {
+            while (syncedLsn < lsn) {
+                if (failure != null)
+                    throw failure;
+                if (closed && flusher == null)
+                    throw new IllegalStateException("Journal is closed");
+                synced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments holding only entries up to {@code appliedLsn}.
+     * The segment being written to is never deleted.
+     */
+    public void truncate(long appliedLsn) {
+        lock.lock();
+        try {
+            Iterator<Segment> iterator = segments.iterator();
+            Segment current = iterator.next();
+            while (iterator.hasNext()) {
+                Segment next = iterator.next();
+                // a segment ends right before the first entry of the next one
+                if (next.firstLsn - 1 > appliedLsn)
+                    break;
+                current.close();
+                Files.deleteIfExists(current.path);
+                segments.removeFirst();
+                current = next;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting entries and returns once everything appended has been forced
+     * and passed to the listener.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            flusher = null;
+            synced.signalAll();
+            for (Segment segment : segments)
+                segment.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<JournalEntry> batch;
+            MappedByteBuffer buffer;
+            lock.lock();
+            try {
+                while (unsynced.isEmpty() && !closed)
+                    appended.awaitUninterruptibly();
+                if (unsynced.isEmpty())
+                    return;
+                batch = unsynced;
+                unsynced = new ArrayList<>();
+                // earlier segments were forced when they were rolled
+                buffer = segments.getLast().buffer;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                buffer.force();
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    synced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                syncedLsn = batch.get(batch.size() - 1).getLsn();
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            durableListener.accept(batch);
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null)
+            throw failure;
+        if (closed)
+            throw new IllegalStateException("Journal is closed");
+    }
+
+    private Segment roll() {
+        Segment full = segments.getLast();
+        full.buffer.force();
+        full.close();
+        Segment segment = createSegment(nextLsn);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private Segment createSegment(long firstLsn) {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, firstLsn, channel,
+                               channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            // zero-padded names sort in sequence number order
+            return list.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                                       && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                       .sorted()
+                       .toList();
+        }
+    }
+
+    private List<JournalEntry> read(Path file) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                // zero is the unwritten rest of the segment, anything else here is a torn record
+                if (length <= 0 || length > buffer.remaining())
+                    break;
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                entries.add(objectMapper.readValue(payload, JournalEntry.class));
+            }
+        }
+        return entries;
+    }
+
+    private byte[] serialize(JournalEntry entry) {
+        try {
+            return objectMapper.writeValueAsBytes(entry);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long firstLsn;
+        // null once the segment is no longer written to
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+
+        private Segment(Path path, long firstLsn) {
+            this.path = path;
+            this.firstLsn = firstLsn;
+        }
+
+        private Segment(Path path, long firstLsn, FileChannel channel, MappedByteBuffer buffer) {
+            this(path, firstLsn);
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void close() {
+            if (channel == null)
+                return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -1,18 +1,68 @@
 package dev.hanjoon.accountmanager.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import dev.hanjoon.accountmanager.domain.Account;
 import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AccountNumberAndBalance;
+import dev.hanjoon.accountmanager.type.AccountStatus;
 
 
 @Repository
 public interface AccountRepository extends CrudRepository<Account, Long> {
+    @EntityGraph(attributePaths = "client")
     List<Account> findByClient(Client client);
     Optional<Account> findByAccountNumber(String accountNumber);
+    @EntityGraph(attributePaths = "client")
+    Optional<Account> findWithClientByAccountNumber(String accountNumber);
     Optional<Account> findFirstByOrderByIdDesc();
+
+    @Query("select a.id from Account a where a.accountNumber = :accountNumber")
+    Optional<Long> findIdByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    @Query("select a.accountStatus from Account a where a.accountNumber = :accountNumber")
+    Optional<AccountStatus> findAccountStatusByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    // loads the account list on a cache miss only, so a hit does not open a transaction;
+    // not read-only, so that it reads the primary: a list from a lagging replica would stay cached after the
+    // writer's eviction (repository methods are otherwise read-only)
+    @Transactional
+    @Query("select new dev.hanjoon.accountmanager.dto.AccountNumberAndBalance(a.accountNumber, a.balance)"
+           + " from Account a where a.client.username = :clientUsername"
+           + " and a.accountStatus <> dev.hanjoon.accountmanager.type.AccountStatus.CLOSED"
+           + " order by a.id")
+    List<AccountNumberAndBalance> findOpenAccountsByClientUsername(@Param("clientUsername") String clientUsername);
+
+    /**
+     * Debits the account in a single guarded statement.
+     * Bypasses the persistence context, so an {@link Account} loaded earlier keeps its old balance.
+     *
+     * @return 1 if debited, 0 if the account is closed, missing or short of balance
+     */
+    @Modifying
+    @Query("update Account a set a.balance = a.balance - :amount, a.updatedAt = :now,"
+           + " a.version = a.version + 1"
+           + " where a.accountNumber = :accountNumber and a.balance >= :amount"
+           + " and a.accountStatus <> dev.hanjoon.accountmanager.type.AccountStatus.CLOSED")
+    int withdrawBalance(@Param("accountNumber") String accountNumber,
+                        @Param("amount") Long amount,
+                        @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update Account a set a.balance = a.balance + :amount, a.updatedAt = :now,"
+           + " a.version = a.version + 1"
+           + " where a.accountNumber = :accountNumber")
+    int depositBalance(@Param("accountNumber") String accountNumber,
+                       @Param("amount") Long amount,
+                       @Param("now") LocalDateTime now);
 }
@@ -1,13 +1,45 @@
 package dev.hanjoon.accountmanager.repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import dev.hanjoon.accountmanager.domain.Client;
 
 @Repository
 public interface ClientRepository extends CrudRepository<Client, Long> {
     Optional<Client> findByUsername(String username);
-}
\ No newline at end of file
+
+    /**
+     * Takes one of the client's account slots in a single guarded statement.
+     *
+     * @return 1 if taken, 0 if the client already has {@code limit} active accounts
+     */
+    @Modifying
+    @Query("update Client c set c.activeAccounts = c.activeAccounts + 1"
+           + " where c.id = :id and c.activeAccounts < :limit")
+    int reserveAccountSlot(@Param("id") Long id, @Param("limit") int limit);
+
+    @Modifying
+    @Query("update Client c set c.activeAccounts = c.activeAccounts - 1"
+           + " where c.id = :id and c.activeAccounts > 0")
+    int releaseAccountSlot(@Param("id") Long id);
+
+    /**
+     * Copies a client saved on another shard, keeping its id.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into client (id, username, active_accounts, created_at)"
+                   + " values (:id, :username, :activeAccounts, :createdAt)", nativeQuery = true)
+    int insertCopy(@Param("id") Long id,
+                   @Param("username") String username,
+                   @Param("activeAccounts") int activeAccounts,
+                   @Param("createdAt") LocalDateTime createdAt);
+}
@@ -1,11 +1,72 @@
 package dev.hanjoon.accountmanager.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import dev.hanjoon.accountmanager.domain.Transaction;
+import dev.hanjoon.accountmanager.dto.CheckTransactionResponse;
+import dev.hanjoon.accountmanager.dto.TransactionHistoryItem;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface TransactionRepository extends CrudRepository<Transaction, Long> {
+    @Query("select new dev.hanjoon.accountmanager.dto.CheckTransactionResponse("
+           + "t.id, a.accountNumber, t.transactionStatus, t.amount, t.createdAt)"
+           + " from Transaction t join t.account a where t.id = :id")
+    Optional<CheckTransactionResponse> findCheckTransactionById(@Param("id") Long id);
+
+    /**
+     * A page of an account's history, newest first, starting right after the (before, beforeId) key.
+     * Seeks ix_transaction_account_created instead of skipping rows, so every page costs the same.
+     */
+    @Query("select new dev.hanjoon.accountmanager.dto.TransactionHistoryItem("
+           + "t.id, t.transactionStatus, t.amount, t.createdAt, t.abortedAt)"
+           + " from Transaction t where t.account.id = :accountId"
+           + " and t.createdAt >= :from and t.createdAt <= :before"
+           + " and (t.createdAt < :before or t.id < :beforeId)"
+           + " and (:status is null or t.transactionStatus = :status)"
+           + " order by t.createdAt desc, t.id desc")
+    List<TransactionHistoryItem> findHistoryPage(@Param("accountId") Long accountId,
+                                                 @Param("status") TransactionStatus status,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("before") LocalDateTime before,
+                                                 @Param("beforeId") Long beforeId,
+                                                 Pageable pageable);
+
+    // read-only rows, fetched from the cursor in chunks instead of all at once
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+                 @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("select t from Transaction t join fetch t.account"
+           + " where t.createdAt >= :from and t.createdAt < :to order by t.createdAt, t.id")
+    Stream<Transaction> streamByCreatedAtRange(@Param("from") LocalDateTime from,
+                                               @Param("to") LocalDateTime to);
+
+    @Query("select t from Transaction t join fetch t.account a join fetch a.client where t.id in :ids")
+    List<Transaction> findAllWithAccountByIdIn(@Param("ids") Collection<Long> ids);
 
-}
\ No newline at end of file
+    /**
+     * Aborts the given transactions in one statement, skipping those no longer committed.
+     *
+     * @return the number of transactions aborted
+     */
+    @Modifying
+    @Query("update Transaction t set t.transactionStatus = dev.hanjoon.accountmanager.type.TransactionStatus.ABORTED,"
+           + " t.abortedAt = :now, t.updatedAt = :now, t.version = t.version + 1"
+           + " where t.id in :ids"
+           + " and t.transactionStatus = dev.hanjoon.accountmanager.type.TransactionStatus.COMMITTED")
+    int abortCommittedTransactions(@Param("ids") Collection<Long> ids,
+                                   @Param("now") LocalDateTime now);
+}
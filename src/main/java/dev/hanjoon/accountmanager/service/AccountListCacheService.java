@@ -0,0 +1,75 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import dev.hanjoon.accountmanager.dto.ListAccountResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Per-client cache of {@link AccountService#listAccount} results, published as the "account-lists" cache metrics.
+ * Writers evict the client only after their transaction commits, so a rolled back change is never seen.
+ * Loads run in the caller's thread behind a future that is put in the cache first.
+ * An eviction racing with a load drops that future without waiting for it, so a list read before
+ * the commit cannot outlive it, and a committing writer never waits on a load that needs a connection.
+ */
+@Service
+public class AccountListCacheService {
+    private final AsyncCache<String, ListAccountResponse> cache;
+
+    public AccountListCacheService(MeterRegistry meterRegistry,
+                                   @Value("${account-manager.cache.account-lists.max-size}") long maxSize,
+                                   @Value("${account-manager.cache.account-lists.ttl-seconds}") long ttlSeconds) {
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxSize)
+                             .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                             .recordStats()
+                             .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "account-lists");
+    }
+
+    public ListAccountResponse get(String clientUsername, Function<String, ListAccountResponse> loader) {
+        CompletableFuture<ListAccountResponse> created = new CompletableFuture<>();
+        CompletableFuture<ListAccountResponse> future = cache.get(clientUsername, (key, executor) -> created);
+        if (future == created) {
+            try {
+                created.complete(loader.apply(clientUsername));
+            } catch (RuntimeException | Error e) {
+                // failed futures are dropped from the cache, and waiting callers get the same exception
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    public void evictAfterCommit(String clientUsername) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.synchronous().invalidate(clientUsername);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.synchronous().invalidate(clientUsername);
+            }
+        });
+    }
+}
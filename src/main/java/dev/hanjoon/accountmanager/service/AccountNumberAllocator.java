@@ -0,0 +1,103 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+/**
+ * Hands out account numbers without asking the database whether they are taken.
+ * Every node leases blocks of sequence numbers from the account_number_sequence row of shard 0,
+ * in a transaction of its own, and serves them from memory, so no two nodes can ever produce the same number.
+ * When {@code account-manager.account-number.permute} is on, each sequence number goes through
+ * a keyed Feistel permutation, so consecutive accounts do not get guessable consecutive numbers.
+ * The row lives with the accounts, so a restart never hands out a number again.
+ */
+@Service
+public class AccountNumberAllocator {
+    // numbers below this one are left to the accounts seeded by ClientService
+    static final long FIRST_ACCOUNT_NUMBER = 1_000_001_000L;
+    static final long CAPACITY = 10_000_000_000L - FIRST_ACCOUNT_NUMBER;
+    private static final int HALF_BITS = 17; // 2^34 > CAPACITY
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+    private static final String LEASE_BLOCK =
+        "update account_number_sequence set next_value = next_value + ? where id = 1";
+    private static final String SELECT_BLOCK_END =
+        "select next_value from account_number_sequence where id = 1";
+
+    private final ShardDirectory shardDirectory;
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+    private final boolean permute;
+    private final long permutationKey;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long end;
+
+    public AccountNumberAllocator(ShardDirectory shardDirectory,
+                                  JdbcTemplate jdbcTemplate,
+                                  @Value("${account-manager.account-number.block-size}") int blockSize,
+                                  @Value("${account-manager.account-number.permute}") boolean permute,
+                                  @Value("${account-manager.account-number.permutation-key}") long permutationKey) {
+        this.shardDirectory = shardDirectory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = blockSize;
+        this.permute = permute;
+        this.permutationKey = permutationKey;
+    }
+
+    public String allocate() {
+        long sequence;
+        lock.lock();
+        try {
+            if (next == end)
+                leaseBlock();
+            sequence = next++;
+        } finally {
+            lock.unlock();
+        }
+        return String.valueOf(FIRST_ACCOUNT_NUMBER + (permute ? permute(sequence, permutationKey) : sequence));
+    }
+
+    // committed before any number of the block is used, so a rolled back account does not give it back
+    private void leaseBlock() {
+        long blockEnd = shardDirectory.callInTransactionOn(0, () -> {
+            jdbcTemplate.update(LEASE_BLOCK, blockSize);
+            return jdbcTemplate.queryForObject(SELECT_BLOCK_END, Long.class);
+        });
+        if (blockEnd > CAPACITY)
+            throw new AccountException(ErrorCode.ACCOUNT_NUMBER_EXHAUSTED);
+        next = blockEnd - blockSize;
+        end = blockEnd;
+    }
+
+    /**
+     * Bijection on [0, CAPACITY): a balanced Feistel network on 34 bits,
+     * re-applied while the result falls outside the range (cycle walking).
+     */
+    static long permute(long sequence, long key) {
+        long value = sequence;
+        do {
+            long left = value >>> HALF_BITS;
+            long right = value & HALF_MASK;
+            for (int round = 0; round < ROUNDS; round++) {
+                long mixed = left ^ (mix(right ^ (key + round * 0x9E3779B97F4A7C15L)) & HALF_MASK);
+                left = right;
+                right = mixed;
+            }
+            value = (left << HALF_BITS) | right;
+        } while (value >= CAPACITY);
+        return value;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -1,13 +1,15 @@
 package dev.hanjoon.accountmanager.service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import dev.hanjoon.accountmanager.aop.AccountLock;
+import dev.hanjoon.accountmanager.aop.RetryOnConflict;
 import dev.hanjoon.accountmanager.domain.Account;
 import dev.hanjoon.accountmanager.domain.Client;
 import dev.hanjoon.accountmanager.dto.AccountNumberAndBalance;
@@ -26,18 +28,24 @@ import lombok.RequiredArgsConstructor;
 @Service
 @RequiredArgsConstructor
 public class AccountService {
+    private static final int MAX_ACTIVE_ACCOUNTS = 10;
+
     private final AccountRepository accountRepository;
     private final ClientRepository clientRepository;
+    private final ClientCacheService clientCacheService;
+    private final AccountNumberAllocator accountNumberAllocator;
+    private final AccountListCacheService accountListCacheService;
+    private final ShardDirectory shardDirectory;
+    private final AccountSlotReleaser accountSlotReleaser;
+    // only in the asynchronous transaction modes
+    private final ObjectProvider<PendingBalanceChanges> pendingBalanceChanges;
 
     @Transactional
     public CreateAccountResponse createAccount(CreateAccountRequest request) {
         Client client = getClientByUsername(request.getClientUsername());
-        List<Account> accounts = accountRepository.findByClient(client);
-        int numAccounts = 0;
-        for (Account account : accounts)
-            if (account.getAccountStatus() != AccountStatus.CLOSED) numAccounts++;
-        if (numAccounts >= 10) throw new AccountException(ErrorCode.ACCOUNT_LIMIT_REACHED);
-        String newAccountNumber = generateRandomAccountNumber();
+        if (clientRepository.reserveAccountSlot(client.getId(), MAX_ACTIVE_ACCOUNTS) == 0)
+            throw new AccountException(ErrorCode.ACCOUNT_LIMIT_REACHED);
+        String newAccountNumber = shardDirectory.allocateOnCurrentShard(accountNumberAllocator::allocate);
         Account saved = accountRepository.save(
                 Account.builder()
                     .client(client)
@@ -45,39 +53,65 @@ public class AccountService {
                     .accountStatus(AccountStatus.ACTIVE)
                     .balance(request.getInitialBalance())
                     .build());
+        accountListCacheService.evictAfterCommit(client.getUsername());
         return new CreateAccountResponse(client.getUsername(), saved.getAccountNumber(), saved.getCreatedAt());
     }
 
     @Transactional
+    @AccountLock
+    @RetryOnConflict
     public CloseAccountResponse closeAccount(CloseAccountRequest request) {
         Client client = getClientByUsername(request.getClientUsername());
         Account account = getAccountByAccountNumber(request.getAccountNumber());
-        if (!account.getClient().equals(client))
+        if (!account.getClient().getId().equals(client.getId()))
             throw new AccountException(ErrorCode.ACCOUNT_OWNED_BY_OTHER_CLIENT);
         if (account.getAccountStatus() == AccountStatus.CLOSED)
             throw new AccountException(ErrorCode.ACCOUNT_CLOSED);
+        PendingBalanceChanges pending = pendingBalanceChanges.getIfAvailable();
+        if (pending != null && pending.hasPendingChanges(account.getAccountNumber()))
+            throw new AccountException(ErrorCode.ACCOUNT_WITH_PENDING_TRANSACTIONS);
         if (account.getBalance() != 0)
             throw new AccountException(ErrorCode.ACCOUNT_WITH_BALANCE);
         account.setAccountStatus(AccountStatus.CLOSED);
         account.setClosedAt(LocalDateTime.now());
         accountRepository.save(account);
+        accountSlotReleaser.release(client, account);
+        accountListCacheService.evictAfterCommit(client.getUsername());
         return new CloseAccountResponse(client.getUsername(), account.getAccountNumber(), account.getClosedAt());
     }
 
     public ListAccountResponse listAccount(String clientUsername) {
-        Client client = getClientByUsername(clientUsername);
-        List<AccountNumberAndBalance> accounts = accountRepository.findByClient(client).stream()
-                .filter(a -> a.getAccountStatus() != AccountStatus.CLOSED)
-                .map(a -> new AccountNumberAndBalance(a.getAccountNumber(), a.getBalance()))
-                .collect(Collectors.toList());
+        return accountListCacheService.get(clientUsername, this::loadAccountList);
+    }
+
+    private ListAccountResponse loadAccountList(String clientUsername) {
+        List<List<AccountNumberAndBalance>> shards = shardDirectory.callOnEachShard(
+                () -> accountRepository.findOpenAccountsByClientUsername(clientUsername));
+        List<AccountNumberAndBalance> accounts = shards.size() == 1 ? shards.get(0) : merge(shards);
+        // an empty list may also mean there is no such client
+        if (accounts.isEmpty())
+            getClientByUsername(clientUsername);
         return ListAccountResponse.builder()
-                          .clientUsername(client.getUsername())
+                          .clientUsername(clientUsername)
                           .accounts(accounts)
                           .build();
     }
 
+    /**
+     * Joins the lists in shard order, leaving out rows on a shard that does not own the account,
+     * which are copies made by a move in progress or left behind by one.
+     */
+    private List<AccountNumberAndBalance> merge(List<List<AccountNumberAndBalance>> shards) {
+        List<AccountNumberAndBalance> accounts = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++)
+            for (AccountNumberAndBalance account : shards.get(shard))
+                if (shardDirectory.shardOf(account.getAccountNumber()) == shard)
+                    accounts.add(account);
+        return accounts;
+    }
+
     protected Client getClientByUsername(String username) {
-        return clientRepository.findByUsername(username)
+        return clientCacheService.findByUsername(username)
                 .orElseThrow(() -> new AccountException(ErrorCode.CLIENT_NOT_FOUND));
     }
 
@@ -85,12 +119,4 @@ public class AccountService {
         return accountRepository.findByAccountNumber(accountNumber)
                 .orElseThrow(() -> new AccountException(ErrorCode.ACCOUNT_NOT_FOUND));
     }
-
-    private String generateRandomAccountNumber() {
-        while (true) {
-            String cand = String.valueOf(new Random().nextLong(9_000_000_000L) + 1_000_000_000L);
-            if (accountRepository.findByAccountNumber(cand).isEmpty())
-                return cand;
-        }
-    }
 }
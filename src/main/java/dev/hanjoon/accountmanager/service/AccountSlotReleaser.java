@@ -0,0 +1,128 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import dev.hanjoon.accountmanager.domain.Account;
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gives the slot of a closed account back to the active account counter of its client.
+ * <p>
+ * On the client's home shard this happens in the closing transaction. Otherwise the release is written to
+ * pending_slot_release along with closing the account, and made on the home shard after commit.
+ * The ones that did not go through are retried in the background until they do. The home shard notes each
+ * release in released_slot in the same transaction as the counter, so a release is never counted twice.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AccountSlotReleaser implements SmartLifecycle {
+    private static final String INSERT_PENDING =
+        "insert into pending_slot_release (account_id, client_id, client_username, created_at) values (?, ?, ?, ?)";
+    private static final String SELECT_PENDING =
+        "select account_id, client_id, client_username from pending_slot_release where created_at <= ?";
+    private static final String DELETE_PENDING =
+        "delete from pending_slot_release where account_id = ?";
+    private static final String INSERT_RELEASED =
+        "insert into released_slot (account_id) select ? where not exists"
+        + " (select 1 from released_slot where account_id = ?)";
+
+    private final ShardDirectory shardDirectory;
+    private final ClientRepository clientRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${account-manager.sharding.release-retry-ms}")
+    private long retryMs;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    /**
+     * Must be called in the transaction closing the account, routed to the account's shard.
+     */
+    public void release(Client client, Account account) {
+        if (shardDirectory.isOnHomeShard(client.getUsername())) {
+            clientRepository.releaseAccountSlot(client.getId());
+            return;
+        }
+        int shard = ShardDirectory.currentShard() == null ? 0 : ShardDirectory.currentShard();
+        jdbcTemplate.update(INSERT_PENDING, account.getId(), client.getId(), client.getUsername(), LocalDateTime.now());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    releaseOnHomeShard(shard, account.getId(), client.getId(), client.getUsername());
+                } catch (RuntimeException e) {
+                    log.warn("Could not release a slot of client {} on its home shard, will retry",
+                             client.getUsername(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Retries the releases written on any shard at least {@code minAgeMs} ago.
+     */
+    void retryPending(long minAgeMs) {
+        LocalDateTime before = LocalDateTime.now().minusNanos(minAgeMs * 1_000_000);
+        for (int shard = 0; shard < shardDirectory.getShardCount(); shard++) {
+            try {
+                List<Map<String, Object>> pending = new JdbcTemplate(shardDirectory.getDataSource(shard))
+                    .queryForList(SELECT_PENDING, before);
+                for (Map<String, Object> release : pending)
+                    releaseOnHomeShard(shard, ((Number) release.get("account_id")).longValue(),
+                                       ((Number) release.get("client_id")).longValue(),
+                                       (String) release.get("client_username"));
+            } catch (RuntimeException e) {
+                log.warn("Could not retry the slot releases written on shard {}", shard, e);
+            }
+        }
+    }
+
+    private void releaseOnHomeShard(int pendingShard, long accountId, long clientId, String clientUsername) {
+        shardDirectory.callInTransactionOn(shardDirectory.homeShardOf(clientUsername), () ->
+            jdbcTemplate.update(INSERT_RELEASED, accountId, accountId) == 1
+            ? clientRepository.releaseAccountSlot(clientId) : 0);
+        shardDirectory.callInTransactionOn(pendingShard, () -> jdbcTemplate.update(DELETE_PENDING, accountId));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (shardDirectory.getShardCount() == 1)
+            return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "slot-release-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> retryPending(retryMs), retryMs, retryMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,28 @@
+package dev.hanjoon.accountmanager.service;
+
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Evicts a client from {@link ClientCacheService} once a transaction updating or deleting its row through JPA
+ * commits; the callbacks themselves run when the session flushes, before the change is visible to others.
+ */
+@Component
+public class ClientCacheInvalidator {
+    private final ClientCacheService clientCacheService;
+
+    // lazy, since Hibernate creates the listener while the repositories are still waiting for it
+    public ClientCacheInvalidator(@Lazy ClientCacheService clientCacheService) {
+        this.clientCacheService = clientCacheService;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void evict(Client client) {
+        clientCacheService.evictAfterCommit(client);
+    }
+}
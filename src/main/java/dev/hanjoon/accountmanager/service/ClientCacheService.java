@@ -0,0 +1,111 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Size bounded cache of clients by username in front of {@link ClientRepository#findByUsername}.
+ * Cached clients are detached copies, shared by every caller, so compare them by id rather than by reference
+ * and do not change them.
+ * Hit, miss and eviction counts are published as the "clients" cache metrics.
+ */
+@Service
+public class ClientCacheService {
+    private final ClientRepository clientRepository;
+    private final Cache<String, Client> cache;
+    // username each cached client is cached under, to evict a renamed client by its old username
+    private final Map<Long, String> usernames = new ConcurrentHashMap<>();
+
+    public ClientCacheService(ClientRepository clientRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${account-manager.cache.clients.max-size}") long maxSize,
+                              @Value("${account-manager.cache.clients.ttl-seconds}") long ttlSeconds) {
+        this.clientRepository = clientRepository;
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxSize)
+                             .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                             .recordStats()
+                             // runs inside the entry's update, so it never races a load of the same username
+                             .evictionListener((String username, Client client, RemovalCause cause) -> {
+                                 if (client != null)
+                                     usernames.remove(client.getId(), username);
+                             })
+                             .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "clients");
+    }
+
+    public Optional<Client> findByUsername(String username) {
+        if (username == null)
+            return Optional.empty();
+        // unknown usernames are not cached, so a client created later is found right away
+        return Optional.ofNullable(cache.get(username, key -> {
+            Client client = clientRepository.findByUsername(key).map(ClientCacheService::detach).orElse(null);
+            if (client != null)
+                usernames.put(client.getId(), key);
+            return client;
+        }));
+    }
+
+    public void evict(String username) {
+        Client evicted = cache.asMap().remove(username);
+        if (evicted != null)
+            usernames.remove(evicted.getId(), username);
+    }
+
+    /**
+     * Evicts the client, under its new username and whatever username it was cached with, once the caller's
+     * transaction commits, so a load in between cannot cache the row from before the change for the whole TTL.
+     */
+    public void evictAfterCommit(Client client) {
+        Long id = client.getId();
+        String username = client.getUsername();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(id, username);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(id, username);
+            }
+        });
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+        usernames.clear();
+    }
+
+    private void evict(Long id, String username) {
+        String cachedAs = usernames.get(id);
+        if (cachedAs != null)
+            evict(cachedAs);
+        evict(username);
+    }
+
+    // a copy no session manages, as the loaded one stays attached to the loading thread's session
+    private static Client detach(Client client) {
+        return Client.builder()
+                     .id(client.getId())
+                     .username(client.getUsername())
+                     .activeAccounts(client.getActiveAccounts())
+                     .createdAt(client.getCreatedAt())
+                     .build();
+    }
+}
@@ -1,5 +1,8 @@
 package dev.hanjoon.accountmanager.service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
@@ -16,28 +19,48 @@ import lombok.RequiredArgsConstructor;
 public class ClientService {
     private final AccountRepository accountRepository;
     private final ClientRepository clientRepository;
+    private final ShardDirectory shardDirectory;
 
     @EventListener(ContextRefreshedEvent.class)
     public void init() {
         Client clientWithoutAccount = Client.builder().username("clientWithoutAccount").build();
-        Client clientWithOneAccount = Client.builder().username("clientWithOneAccount").build();
-        Client clientWithTenAccount = Client.builder().username("clientWithTenAccount").build();
-        clientRepository.save(clientWithoutAccount);
-        clientRepository.save(clientWithOneAccount);
-        clientRepository.save(clientWithTenAccount);
-        accountRepository.save(Account.builder()
-                                      .accountNumber("1000000000")
-                                      .accountStatus(AccountStatus.ACTIVE)
-                                      .balance(10_000L)
-                                      .client(clientWithOneAccount)
-                                      .build());
+        Client clientWithOneAccount = Client.builder().username("clientWithOneAccount").activeAccounts(1).build();
+        Client clientWithTenAccount = Client.builder().username("clientWithTenAccount").activeAccounts(10).build();
+        saveClients(List.of(clientWithoutAccount, clientWithOneAccount, clientWithTenAccount));
+        List<Account> accounts = new ArrayList<>();
+        accounts.add(Account.builder()
+                            .accountNumber("1000000000")
+                            .accountStatus(AccountStatus.ACTIVE)
+                            .balance(10_000L)
+                            .client(clientWithOneAccount)
+                            .build());
         for (int i = 1; i <= 10; i++) {
-            accountRepository.save(Account.builder()
-                                          .accountNumber(String.valueOf(1_000_000_000 + i))
-                                          .accountStatus(AccountStatus.ACTIVE)
-                                          .balance(i < 5 ? 10_000L : 0L)
-                                          .client(clientWithTenAccount)
-                                          .build());
+            accounts.add(Account.builder()
+                                .accountNumber(String.valueOf(1_000_000_000 + i))
+                                .accountStatus(AccountStatus.ACTIVE)
+                                .balance(i < 5 ? 10_000L : 0L)
+                                .client(clientWithTenAccount)
+                                .build());
+        }
+        for (int shard = 0; shard < shardDirectory.getShardCount(); shard++) {
+            List<Account> onShard = new ArrayList<>();
+            for (Account account : accounts)
+                if (shardDirectory.shardOf(account.getAccountNumber()) == shard)
+                    onShard.add(account);
+            shardDirectory.runOn(shard, () -> accountRepository.saveAll(onShard));
         }
     }
+
+    /**
+     * Saves the clients on every shard with the same ids.
+     */
+    public void saveClients(List<Client> clients) {
+        clientRepository.saveAll(clients);
+        for (int shard = 1; shard < shardDirectory.getShardCount(); shard++)
+            shardDirectory.runOn(shard, () -> {
+                for (Client client : clients)
+                    clientRepository.insertCopy(client.getId(), client.getUsername(),
+                                                client.getActiveAccounts(), client.getCreatedAt());
+            });
+    }
 }
@@ -0,0 +1,42 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import lombok.RequiredArgsConstructor;
+
+@Service
+@ConditionalOnProperty(name = "account-manager.transaction.mode", havingValue = "direct", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DirectTransactionProcessor implements TransactionProcessor {
+    private final TransactionService transactionService;
+    private final TransactionBatchService transactionBatchService;
+
+    @Override
+    public SpendBalanceResponse spendBalance(SpendBalanceRequest request) {
+        return transactionService.spendBalance(request);
+    }
+
+    @Override
+    public SpendBalanceBatchResponse spendBalances(List<SpendBalanceRequest> requests) {
+        return transactionBatchService.spendBalances(requests);
+    }
+
+    @Override
+    public AbortTransactionResponse abortTransaction(AbortTransactionRequest request) {
+        return transactionService.abortTransaction(request);
+    }
+
+    @Override
+    public AbortTransactionBatchResponse abortTransactions(List<AbortTransactionRequest> requests) {
+        return transactionBatchService.abortTransactions(requests);
+    }
+}
@@ -0,0 +1,114 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Replays the first completed response of a request for every retry carrying the same Idempotency-Key.
+ * Keys are scoped to the caller, so the same key sent by someone else is a different request, and the response is
+ * kept together with a fingerprint of the request body: reusing a key for a different body is refused with
+ * IDEMPOTENCY_KEY_REUSED instead of replaying a response that does not belong to it.
+ * Responses are kept in Redis for {@code account-manager.idempotency.ttl-seconds};
+ * a duplicate arriving while the first one is still running waits for it instead of running again.
+ * Failed requests are not stored, so they can be retried with the same key.
+ */
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+
+    @Value("${account-manager.idempotency.ttl-seconds}")
+    private long ttlSeconds;
+
+    @Value("${account-manager.idempotency.wait-time-ms}")
+    private long waitTimeMs;
+
+    private record StoredResponse(String fingerprint, String response) {}
+
+    /**
+     * @param caller  who the key belongs to, such as the client or the account of the request
+     * @param request the request body, to tell a retry from a different request under the same key
+     */
+    public <T> T execute(String scope, String caller, String idempotencyKey, Object request,
+                         Class<T> responseType, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank())
+            return action.get();
+        String key = "idempotency:" + scope + ":" + caller + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        RBucket<String> bucket = redissonClient.getBucket(key, StringCodec.INSTANCE);
+        String cached = bucket.get();
+        if (cached != null)
+            return replay(cached, fingerprint, responseType);
+
+        RLock lock = redissonClient.getLock(key + ":lock");
+        try {
+            // no lease time: the watchdog keeps the lock for as long as the first request runs
+            if (!lock.tryLock(waitTimeMs, TimeUnit.MILLISECONDS))
+                throw new TransactionException(ErrorCode.IDEMPOTENT_REQUEST_IN_PROGRESS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException(ErrorCode.IDEMPOTENT_REQUEST_IN_PROGRESS);
+        }
+        try {
+            cached = bucket.get();
+            if (cached != null)
+                return replay(cached, fingerprint, responseType);
+            T response = action.get();
+            bucket.set(write(new StoredResponse(fingerprint, write(response))), ttlSeconds, TimeUnit.SECONDS);
+            return response;
+        } finally {
+            if (lock.isHeldByCurrentThread())
+                lock.unlock();
+        }
+    }
+
+    private <T> T replay(String cached, String fingerprint, Class<T> responseType) {
+        StoredResponse stored = read(cached, StoredResponse.class);
+        if (!stored.fingerprint().equals(fingerprint))
+            throw new TransactionException(ErrorCode.IDEMPOTENCY_KEY_REUSED);
+        return read(stored.response(), responseType);
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                                                         .digest(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to fingerprint idempotent request", e);
+        }
+    }
+
+    private <T> T read(String json, Class<T> responseType) {
+        try {
+            return objectMapper.readValue(json, responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable idempotent response: " + json, e);
+        }
+    }
+
+    private String write(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unwritable idempotent response", e);
+        }
+    }
+}
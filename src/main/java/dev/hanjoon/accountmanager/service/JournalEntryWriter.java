@@ -0,0 +1,94 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import dev.hanjoon.accountmanager.journal.JournalEntry;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Writes accepted spends and aborts to the database with JDBC batch statements,
+ * debiting or crediting each account once per batch with its net change.
+ * Runs in the caller's transaction.
+ */
+@Component
+@RequiredArgsConstructor
+public class JournalEntryWriter {
+    private static final String INSERT_TRANSACTION =
+        "insert into transaction (id, transaction_status, amount, created_at, updated_at, version, account_id)"
+        + " values (?, ?, ?, ?, ?, 0, ?)";
+    private static final String ABORT_TRANSACTION =
+        "update transaction set transaction_status = ?, aborted_at = ?, updated_at = ?, version = version + 1"
+        + " where id = ? and transaction_status = ?";
+    private static final String UPDATE_BALANCE =
+        "update account set balance = balance + ?, updated_at = ?, version = version + 1 where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionMetrics transactionMetrics;
+
+    public void write(List<JournalEntry> batch) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> aborts = new ArrayList<>();
+        List<JournalEntry> abortEntries = new ArrayList<>();
+        Map<Long, Long> balanceChanges = new LinkedHashMap<>();
+        long spent = 0L;
+        for (JournalEntry entry : batch) {
+            if (entry.getType() == JournalEntry.Type.SPEND) {
+                inserts.add(new Object[] {entry.getTransactionId(), TransactionStatus.COMMITTED.name(),
+                                          entry.getAmount(), entry.getTimestamp(), entry.getTimestamp(),
+                                          entry.getAccountId()});
+                balanceChanges.merge(entry.getAccountId(), -entry.getAmount(), Long::sum);
+                spent += entry.getAmount();
+            } else {
+                aborts.add(new Object[] {TransactionStatus.ABORTED.name(), entry.getTimestamp(), now,
+                                         entry.getTransactionId(), TransactionStatus.COMMITTED.name()});
+                abortEntries.add(entry);
+            }
+        }
+        if (!inserts.isEmpty())
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION, inserts);
+        transactionMetrics.recordAfterCommit(TransactionStatus.COMMITTED, inserts.size(), spent);
+        if (!aborts.isEmpty()) {
+            int abortCount = 0;
+            long aborted = 0L;
+            int[] updated = jdbcTemplate.batchUpdate(ABORT_TRANSACTION, aborts);
+            // an abort that found the transaction already aborted credits nothing
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0)
+                    continue;
+                JournalEntry entry = abortEntries.get(i);
+                balanceChanges.merge(entry.getAccountId(), entry.getAmount(), Long::sum);
+                abortCount++;
+                aborted += entry.getAmount();
+            }
+            transactionMetrics.recordAfterCommit(TransactionStatus.ABORTED, abortCount, aborted);
+        }
+        List<Object[]> balances = new ArrayList<>(balanceChanges.size());
+        for (Map.Entry<Long, Long> change : balanceChanges.entrySet())
+            balances.add(new Object[] {change.getValue(), now, change.getKey()});
+        jdbcTemplate.batchUpdate(UPDATE_BALANCE, balances);
+    }
+
+    /**
+     * Whether a failed {@link #write} may succeed when tried again, as after a lost connection or a timeout,
+     * rather than being refused by the database whatever the number of attempts.
+     */
+    public static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+               || e instanceof RecoverableDataAccessException
+               || e instanceof DataAccessResourceFailureException
+               || e instanceof CannotCreateTransactionException;
+    }
+}
@@ -0,0 +1,66 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import dev.hanjoon.accountmanager.journal.JournalEntry;
+
+/**
+ * Journal entries accepted but not yet written to the database.
+ * An entry is added before it is appended to the journal and removed together with the
+ * commit of the database transaction holding it, so it is counted either here or in the
+ * database but never in both.
+ */
+@Component
+@ConditionalOnProperty(name = "account-manager.transaction.mode", havingValue = "journal")
+public class JournalLedger implements PendingBalanceChanges {
+    // pending spends are subtracted from the balance read from the database,
+    // pending aborts are not added to it so that a balance is never overstated
+    private final Map<String, Long> pendingDebits = new ConcurrentHashMap<>();
+    private final Map<String, Integer> pendingEntries = new ConcurrentHashMap<>();
+    private final Map<Long, JournalEntry> pendingSpends = new ConcurrentHashMap<>();
+    private final Map<Long, JournalEntry> pendingAborts = new ConcurrentHashMap<>();
+
+    public void add(JournalEntry entry) {
+        pendingEntries.merge(entry.getAccountNumber(), 1, Integer::sum);
+        if (entry.getType() == JournalEntry.Type.SPEND) {
+            pendingDebits.merge(entry.getAccountNumber(), entry.getAmount(), Long::sum);
+            pendingSpends.put(entry.getTransactionId(), entry);
+        } else {
+            pendingAborts.put(entry.getTransactionId(), entry);
+        }
+    }
+
+    public void remove(JournalEntry entry) {
+        if (entry.getType() == JournalEntry.Type.SPEND) {
+            pendingSpends.remove(entry.getTransactionId());
+            pendingDebits.computeIfPresent(entry.getAccountNumber(), (k, debit) -> {
+                long rest = debit - entry.getAmount();
+                return rest == 0 ? null : rest;
+            });
+        } else {
+            pendingAborts.remove(entry.getTransactionId());
+        }
+        pendingEntries.computeIfPresent(entry.getAccountNumber(), (k, count) -> count == 1 ? null : count - 1);
+    }
+
+    public long pendingDebit(String accountNumber) {
+        return pendingDebits.getOrDefault(accountNumber, 0L);
+    }
+
+    @Override
+    public boolean hasPendingChanges(String accountNumber) {
+        return pendingEntries.containsKey(accountNumber);
+    }
+
+    public JournalEntry pendingSpend(Long transactionId) {
+        return pendingSpends.get(transactionId);
+    }
+
+    public boolean isAbortPending(Long transactionId) {
+        return pendingAborts.containsKey(transactionId);
+    }
+}
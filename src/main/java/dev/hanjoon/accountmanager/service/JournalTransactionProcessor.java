@@ -0,0 +1,520 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.hanjoon.accountmanager.domain.Account;
+import dev.hanjoon.accountmanager.domain.SnowflakeIdGenerator;
+import dev.hanjoon.accountmanager.domain.Transaction;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchItem;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.journal.JournalEntry;
+import dev.hanjoon.accountmanager.journal.TransactionJournal;
+import dev.hanjoon.accountmanager.repository.AccountRepository;
+import dev.hanjoon.accountmanager.repository.TransactionRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Answers a spend or an abort as soon as it is forced to the local {@link TransactionJournal},
+ * and writes the journal to the database in batches on a background thread.
+ * <p>
+ * Requests are validated under the account lock against the database balance less the
+ * spends still in the {@link JournalLedger}; a batch is committed and removed from the ledger
+ * while no request is between reading the two. Until a request has been written, it is visible
+ * to spends, aborts and closing the account, but not to the read endpoints.
+ * Entries left unwritten by a crash are read back from the journal on start,
+ * after the checkpoint stored with the last batch written. Starting fails if the checkpoint was not
+ * written from the journal found in the directory, as when either of them was lost.
+ * A stop that leaves nothing to write retires the journal, deleting it and clearing the journal of the checkpoint,
+ * so that the next start begins a new one even if the database did not outlive the process.
+ * <p>
+ * A batch failing on what may go away, like a lost connection, is retried until it is written.
+ * One the database refuses is written entry by entry, and an entry refused on its own is moved
+ * to the journal_quarantine table, counted in "journal.quarantined" and logged as an error.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "account-manager.transaction.mode", havingValue = "journal")
+@RequiredArgsConstructor
+public class JournalTransactionProcessor implements TransactionProcessor, SmartLifecycle {
+    // started before the web server accepts requests and stopped after it no longer does
+    private static final int PHASE = Integer.MAX_VALUE - 1024;
+
+    private static final String SELECT_CHECKPOINT =
+        "select applied_lsn, journal_id from journal_checkpoint where node_id = ?";
+    private static final String UPDATE_CHECKPOINT =
+        "update journal_checkpoint set applied_lsn = ? where node_id = ?";
+    private static final String INSERT_CHECKPOINT =
+        "insert into journal_checkpoint (applied_lsn, journal_id, node_id) values (0, ?, ?)";
+    private static final String UPDATE_CHECKPOINT_JOURNAL =
+        "update journal_checkpoint set journal_id = ? where node_id = ?";
+    private static final String INSERT_QUARANTINE =
+        "insert into journal_quarantine (node_id, lsn, entry, error, quarantined_at) values (?, ?, ?, ?, ?)";
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final TransactionService transactionService;
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final LockService lockService;
+    private final JournalLedger journalLedger;
+    private final AccountListCacheService accountListCacheService;
+    private final JournalEntryWriter journalEntryWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${account-manager.journal.dir}")
+    private String journalDir;
+    @Value("${account-manager.journal.segment-bytes}")
+    private int segmentBytes;
+    @Value("${account-manager.journal.apply-batch-size}")
+    private int applyBatchSize;
+    @Value("${account-manager.journal.retry-backoff-ms}")
+    private long retryBackoffMs;
+    @Value("${account-manager.batch.max-size}")
+    private int maxBatchSize;
+    @Value("${account-manager.id.node-id}")
+    private int nodeId;
+
+    private final BlockingQueue<JournalEntry> applyQueue = new LinkedBlockingQueue<>();
+    private final ReadWriteLock applyLock = new ReentrantReadWriteLock();
+    private SnowflakeIdGenerator idGenerator;
+    private Counter quarantined;
+    private TransactionJournal journal;
+    private Thread applier;
+    private volatile boolean running;
+    // set by the applier when it ends with every entry written
+    private volatile boolean drained;
+
+    @Override
+    public SpendBalanceResponse spendBalance(SpendBalanceRequest request) {
+        JournalEntry entry = reserveSpend(request);
+        journal.awaitDurable(entry.getLsn());
+        return spendResponse(entry);
+    }
+
+    @Override
+    public SpendBalanceBatchResponse spendBalances(List<SpendBalanceRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new TransactionException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE);
+        List<SpendBalanceBatchItem> results = new ArrayList<>(requests.size());
+        long lastLsn = 0L;
+        for (SpendBalanceRequest request : requests) {
+            ErrorCode errorCode;
+            try {
+                JournalEntry entry = reserveSpend(request);
+                lastLsn = entry.getLsn();
+                results.add(SpendBalanceBatchItem.builder()
+                                                 .response(spendResponse(entry))
+                                                 .build());
+                continue;
+            } catch (AccountException e) {
+                errorCode = e.getErrorCode();
+            } catch (TransactionException e) {
+                errorCode = e.getErrorCode();
+            }
+            results.add(SpendBalanceBatchItem.builder()
+                                             .errorCode(errorCode)
+                                             .errorMsg(errorCode.getDescription())
+                                             .build());
+        }
+        journal.awaitDurable(lastLsn);
+        return new SpendBalanceBatchResponse(results);
+    }
+
+    @Override
+    public AbortTransactionResponse abortTransaction(AbortTransactionRequest request) {
+        JournalEntry entry = reserveAbort(request);
+        journal.awaitDurable(entry.getLsn());
+        return abortResponse(entry);
+    }
+
+    @Override
+    public AbortTransactionBatchResponse abortTransactions(List<AbortTransactionRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new TransactionException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE);
+        List<AbortTransactionBatchItem> results = new ArrayList<>(requests.size());
+        long lastLsn = 0L;
+        for (AbortTransactionRequest request : requests) {
+            ErrorCode errorCode;
+            try {
+                JournalEntry entry = reserveAbort(request);
+                lastLsn = entry.getLsn();
+                results.add(AbortTransactionBatchItem.builder()
+                                                     .response(abortResponse(entry))
+                                                     .build());
+                continue;
+            } catch (AccountException e) {
+                errorCode = e.getErrorCode();
+            } catch (TransactionException e) {
+                errorCode = e.getErrorCode();
+            }
+            results.add(AbortTransactionBatchItem.builder()
+                                                 .errorCode(errorCode)
+                                                 .errorMsg(errorCode.getDescription())
+                                                 .build());
+        }
+        journal.awaitDurable(lastLsn);
+        return new AbortTransactionBatchResponse(results);
+    }
+
+    @Override
+    public void start() {
+        idGenerator = new SnowflakeIdGenerator(nodeId);
+        quarantined = Counter.builder("journal.quarantined")
+                             .description("Journal entries the database refused, moved to journal_quarantine")
+                             .register(meterRegistry);
+        journal = new TransactionJournal(Path.of(journalDir), segmentBytes, objectMapper, applyQueue::addAll);
+        try {
+            List<JournalEntry> unapplied = journal.open(loadCheckpoint());
+            unapplied.forEach(journalLedger::add);
+            applyQueue.addAll(unapplied);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        running = true;
+        applier = new Thread(this::applyLoop, "journal-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * Waits for every accepted entry to be written to the database and retires the journal,
+     * unless writing fails, in which case the rest is written on the next start.
+     */
+    @Override
+    public void stop() {
+        journal.close();
+        running = false;
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (drained)
+            retire();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private JournalEntry reserveSpend(SpendBalanceRequest request) {
+        if (request.getAccountNumber() == null)
+            throw new AccountException(ErrorCode.ACCOUNT_NOT_FOUND);
+        lockService.lock(request.getAccountNumber());
+        try {
+            long pendingDebit;
+            Account account;
+            applyLock.readLock().lock();
+            try {
+                pendingDebit = journalLedger.pendingDebit(request.getAccountNumber());
+                account = accountRepository.findWithClientByAccountNumber(
+                    request.getAccountNumber()).orElse(null);
+            } finally {
+                applyLock.readLock().unlock();
+            }
+            transactionService.validateSpend(account, request,
+                                             account == null ? 0L : account.getBalance() - pendingDebit);
+            return append(JournalEntry.builder()
+                                      .type(JournalEntry.Type.SPEND)
+                                      .transactionId(idGenerator.nextId())
+                                      .accountId(account.getId())
+                                      .accountNumber(account.getAccountNumber())
+                                      .clientUsername(account.getClient().getUsername())
+                                      .amount(request.getAmount())
+                                      .timestamp(LocalDateTime.now())
+                                      .build());
+        } finally {
+            lockService.unlock(request.getAccountNumber());
+        }
+    }
+
+    private JournalEntry reserveAbort(AbortTransactionRequest request) {
+        if (request.getAccountNumber() == null)
+            throw new AccountException(ErrorCode.ACCOUNT_NOT_FOUND);
+        lockService.lock(request.getAccountNumber());
+        try {
+            Account account = accountRepository.findWithClientByAccountNumber(
+                request.getAccountNumber())
+                       .orElseThrow(() -> new AccountException(
+                                    ErrorCode.ACCOUNT_NOT_FOUND));
+            boolean abortPending;
+            JournalEntry spend;
+            Transaction transaction = null;
+            applyLock.readLock().lock();
+            try {
+                abortPending = journalLedger.isAbortPending(request.getTransactionId());
+                spend = journalLedger.pendingSpend(request.getTransactionId());
+                if (spend == null)
+                    transaction = transactionRepository.findById(
+                        request.getTransactionId())
+                               .orElseThrow(() -> new TransactionException(
+                                            ErrorCode.TRANSACTION_NOT_FOUND));
+            } finally {
+                applyLock.readLock().unlock();
+            }
+            Long accountId = spend != null ? spend.getAccountId() : transaction.getAccount().getId();
+            Long amount = spend != null ? spend.getAmount() : transaction.getAmount();
+            TransactionStatus status = spend != null ? TransactionStatus.COMMITTED
+                                                     : transaction.getTransactionStatus();
+            if (!accountId.equals(account.getId()))
+                throw new TransactionException(
+                    ErrorCode.TRANSACTION_ACCOUNT_NOT_MATCHED);
+            if (!amount.equals(request.getAmount()))
+                throw new TransactionException(
+                    ErrorCode.TRANSACTION_INVALID_AMOUNT);
+            if (abortPending || status != TransactionStatus.COMMITTED)
+                throw new TransactionException(
+                    ErrorCode.TRANSACTION_NOT_COMMITTED);
+            return append(JournalEntry.builder()
+                                      .type(JournalEntry.Type.ABORT)
+                                      .transactionId(request.getTransactionId())
+                                      .accountId(account.getId())
+                                      .accountNumber(account.getAccountNumber())
+                                      .clientUsername(account.getClient().getUsername())
+                                      .amount(amount)
+                                      .timestamp(LocalDateTime.now())
+                                      .build());
+        } finally {
+            lockService.unlock(request.getAccountNumber());
+        }
+    }
+
+    private JournalEntry append(JournalEntry entry) {
+        // in the ledger before the applier can see it, so that it is never removed before it is added
+        journalLedger.add(entry);
+        try {
+            journal.append(entry);
+        } catch (RuntimeException e) {
+            journalLedger.remove(entry);
+            throw e;
+        }
+        return entry;
+    }
+
+    private void applyLoop() {
+        List<JournalEntry> batch = new ArrayList<>(applyBatchSize);
+        while (true) {
+            JournalEntry first;
+            try {
+                first = applyQueue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (!running) {
+                    drained = true;
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            applyQueue.drainTo(batch, applyBatchSize - 1);
+            if (!applyWithRetry(batch))
+                return;
+            Set<String> usernames = new HashSet<>();
+            for (JournalEntry entry : batch)
+                if (usernames.add(entry.getClientUsername()))
+                    accountListCacheService.evictAfterCommit(entry.getClientUsername());
+            journal.truncate(batch.get(batch.size() - 1).getLsn());
+            batch.clear();
+        }
+    }
+
+    private boolean applyWithRetry(List<JournalEntry> batch) {
+        while (true) {
+            try {
+                apply(batch);
+                return true;
+            } catch (RuntimeException e) {
+                if (!JournalEntryWriter.isTransient(e))
+                    return applySeparately(batch, e);
+                log.warn("Failed to write {} journal entries to the database", batch.size(), e);
+            }
+            if (!backOff())
+                return false;
+        }
+    }
+
+    // writes the entries of a refused batch one by one, to set aside only the ones refused on their own
+    private boolean applySeparately(List<JournalEntry> batch, RuntimeException failure) {
+        if (batch.size() > 1) {
+            log.warn("Database refused {} journal entries, writing them one by one", batch.size(), failure);
+            for (JournalEntry entry : batch)
+                if (!applyWithRetry(List.of(entry)))
+                    return false;
+            return true;
+        }
+        while (true) {
+            try {
+                quarantine(batch.get(0), failure);
+                return true;
+            } catch (RuntimeException e) {
+                log.warn("Failed to quarantine journal entry {}", batch.get(0).getLsn(), e);
+            }
+            if (!backOff())
+                return false;
+        }
+    }
+
+    private boolean backOff() {
+        if (!running)
+            return false;
+        try {
+            Thread.sleep(retryBackoffMs);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void apply(List<JournalEntry> batch) {
+        org.springframework.transaction.TransactionStatus transaction =
+            transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            journalEntryWriter.write(batch);
+            jdbcTemplate.update(UPDATE_CHECKPOINT, batch.get(batch.size() - 1).getLsn(), nodeId);
+        } catch (RuntimeException e) {
+            transactionManager.rollback(transaction);
+            throw e;
+        }
+        commit(transaction, batch);
+    }
+
+    private void quarantine(JournalEntry entry, RuntimeException failure) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        String error = String.valueOf(failure.getMessage());
+        org.springframework.transaction.TransactionStatus transaction =
+            transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            jdbcTemplate.update(INSERT_QUARANTINE, nodeId, entry.getLsn(), json,
+                                error.substring(0, Math.min(error.length(), MAX_ERROR_LENGTH)),
+                                LocalDateTime.now());
+            jdbcTemplate.update(UPDATE_CHECKPOINT, entry.getLsn(), nodeId);
+        } catch (RuntimeException e) {
+            transactionManager.rollback(transaction);
+            throw e;
+        }
+        commit(transaction, List.of(entry));
+        quarantined.increment();
+        log.error("Journal entry {} ({} of {} on account {}) was refused by the database and quarantined;"
+                  + " the client was told it succeeded", entry.getLsn(), entry.getType(), entry.getAmount(),
+                  entry.getAccountNumber(), failure);
+    }
+
+    private void commit(org.springframework.transaction.TransactionStatus transaction, List<JournalEntry> batch) {
+        applyLock.writeLock().lock();
+        try {
+            transactionManager.commit(transaction);
+            for (JournalEntry entry : batch)
+                journalLedger.remove(entry);
+        } finally {
+            applyLock.writeLock().unlock();
+        }
+    }
+
+    // the database first: a journal left behind by a crash right after is deleted on the next start
+    private void retire() {
+        try {
+            jdbcTemplate.update(UPDATE_CHECKPOINT_JOURNAL, null, nodeId);
+            journal.delete();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to retire the journal in {}", journalDir, e);
+        }
+    }
+
+    // the checkpoint is only valid for the journal it was written from, and is created along with a new journal
+    private long loadCheckpoint() throws IOException {
+        String journalId = journal.readId();
+        List<Map<String, Object>> checkpoint = jdbcTemplate.queryForList(SELECT_CHECKPOINT, nodeId);
+        if (checkpoint.isEmpty()) {
+            if (journalId != null)
+                throw new IllegalStateException(String.format(
+                    "Journal %s in %s has no checkpoint in the database for node %d; its unwritten entries are lost"
+                    + " if the database did not outlive the process, as an in-memory one does not",
+                    journalId, journalDir, nodeId));
+            jdbcTemplate.update(INSERT_CHECKPOINT, journal.createId(), nodeId);
+            return 0L;
+        }
+        Object checkpointJournalId = checkpoint.get(0).get("journal_id");
+        long appliedLsn = ((Number) checkpoint.get(0).get("applied_lsn")).longValue();
+        if (checkpointJournalId == null) {
+            // retired, every entry of a journal still found here was written
+            journal.delete();
+            jdbcTemplate.update(UPDATE_CHECKPOINT_JOURNAL, journal.createId(), nodeId);
+            return appliedLsn;
+        }
+        if (!Objects.equals(journalId, checkpointJournalId))
+            throw new IllegalStateException(String.format(
+                "Checkpoint of node %d was written from journal %s, but %s holds %s",
+                nodeId, checkpointJournalId, journalDir, journalId == null ? "no journal" : "journal " + journalId));
+        return appliedLsn;
+    }
+
+    private static SpendBalanceResponse spendResponse(JournalEntry entry) {
+        return new SpendBalanceResponse(entry.getAccountNumber(),
+                                        TransactionStatus.COMMITTED,
+                                        entry.getTransactionId(),
+                                        entry.getAmount(),
+                                        entry.getTimestamp());
+    }
+
+    private static AbortTransactionResponse abortResponse(JournalEntry entry) {
+        return new AbortTransactionResponse(entry.getAccountNumber(),
+                                            TransactionStatus.ABORTED,
+                                            entry.getTransactionId(),
+                                            entry.getAmount(),
+                                            entry.getTimestamp());
+    }
+}
@@ -0,0 +1,54 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+/**
+ * In-JVM lock striping for single instance deployments.
+ * Accounts hashing to the same stripe share a lock, so the same account is always serialized
+ * while different accounts only contend on a hash collision.
+ */
+@Service
+@ConditionalOnProperty(name = "account-manager.lock.strategy", havingValue = "local")
+public class LocalLockService implements LockService {
+    private final ReentrantLock[] stripes;
+    private final long waitTimeMs;
+
+    public LocalLockService(@Value("${account-manager.lock.stripes}") int numStripes,
+                            @Value("${account-manager.lock.wait-time-ms}") long waitTimeMs) {
+        this.stripes = new ReentrantLock[Math.max(1, numStripes)];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new ReentrantLock();
+        this.waitTimeMs = waitTimeMs;
+    }
+
+    @Override
+    public void lock(String accountNumber) {
+        try {
+            if (!getStripe(accountNumber).tryLock(waitTimeMs, TimeUnit.MILLISECONDS))
+                throw new TransactionException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+        }
+    }
+
+    @Override
+    public void unlock(String accountNumber) {
+        ReentrantLock lock = getStripe(accountNumber);
+        if (lock.isHeldByCurrentThread())
+            lock.unlock();
+    }
+
+    private ReentrantLock getStripe(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return stripes[Math.floorMod(h ^ (h >>> 16), stripes.length)];
+    }
+}
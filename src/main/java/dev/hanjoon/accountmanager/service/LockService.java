@@ -0,0 +1,16 @@
+package dev.hanjoon.accountmanager.service;
+
+/**
+ * Per-account mutual exclusion used by {@link dev.hanjoon.accountmanager.aop.LockAopAspect}.
+ * The implementation is picked with {@code account-manager.lock.strategy}:
+ * {@code redis} (default) for multi-node deployments, {@code local} for a single instance.
+ */
+public interface LockService {
+    /**
+     * @throws dev.hanjoon.accountmanager.exception.TransactionException
+     *         with {@code ACCOUNT_TRANSACTION_LOCK} if the lock is not acquired in time
+     */
+    void lock(String accountNumber);
+
+    void unlock(String accountNumber);
+}
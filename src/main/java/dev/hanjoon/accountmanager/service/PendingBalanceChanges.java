@@ -0,0 +1,8 @@
+package dev.hanjoon.accountmanager.service;
+
+/**
+ * Spends and aborts accepted by an asynchronous transaction mode but not yet in the database.
+ */
+public interface PendingBalanceChanges {
+    boolean hasPendingChanges(String accountNumber);
+}
@@ -0,0 +1,50 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import lombok.RequiredArgsConstructor;
+
+@Service
+@ConditionalOnProperty(name = "account-manager.lock.strategy", havingValue = "redis", matchIfMissing = true)
+@RequiredArgsConstructor
+public class RedisLockService implements LockService {
+    private final RedissonClient redissonClient;
+
+    @Value("${account-manager.lock.wait-time-ms}")
+    private long waitTimeMs;
+
+    @Value("${account-manager.lock.lease-time-ms}")
+    private long leaseTimeMs;
+
+    @Override
+    public void lock(String accountNumber) {
+        RLock lock = redissonClient.getLock(getLockKey(accountNumber));
+        try {
+            if (!lock.tryLock(waitTimeMs, leaseTimeMs, TimeUnit.MILLISECONDS))
+                throw new TransactionException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+        }
+    }
+
+    @Override
+    public void unlock(String accountNumber) {
+        RLock lock = redissonClient.getLock(getLockKey(accountNumber));
+        // the lease may have expired while the transaction was still running
+        if (lock.isHeldByCurrentThread())
+            lock.unlock();
+    }
+
+    private String getLockKey(String accountNumber) {
+        return "account-lock:" + accountNumber;
+    }
+}
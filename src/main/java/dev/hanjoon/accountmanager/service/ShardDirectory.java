@@ -0,0 +1,336 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.hanjoon.accountmanager.config.ShardRoutingDataSource;
+import dev.hanjoon.accountmanager.config.VirtualThreads;
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+/**
+ * Tells which shard holds an account and runs work against a given shard.
+ * <p>
+ * An account number hashes to one of {@link #SLOTS} slots, and a slot belongs to shard (slot % shards)
+ * unless {@link ShardRebalancer} has moved it; moves are kept in shard_slot of shard 0.
+ * An account's transactions live with it. Clients are copied to every shard, and the active account
+ * counter of a client is kept on its home shard, a fixed hash of the username that is never moved.
+ * <p>
+ * With sharding off there is one shard and everything runs in place.
+ */
+@Service
+public class ShardDirectory implements SmartInitializingSingleton, DisposableBean {
+    public static final int SLOTS = 1024;
+    // numbers drawn for a new account before giving up on the shard, covers a shard owning a single slot
+    private static final int MAX_ALLOCATION_ATTEMPTS = SLOTS * 16;
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final List<DataSource> shards;
+    private final TransactionTemplate newTransaction;
+    private final TransactionTemplate newReadOnlyTransaction;
+    private final AtomicIntegerArray slotShards = new AtomicIntegerArray(SLOTS);
+    // requests routed by an account number of the slot and not finished yet
+    private final AtomicIntegerArray inFlight = new AtomicIntegerArray(SLOTS);
+    private final AtomicIntegerArray frozen = new AtomicIntegerArray(SLOTS);
+    private final ExecutorService fanOutExecutor;
+
+    public ShardDirectory(DataSource dataSource,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${account-manager.threads.virtual}") boolean virtualThreads) {
+        this.shards = dataSource instanceof ShardRoutingDataSource routing
+                      ? routing.getShards() : List.of(dataSource);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.newReadOnlyTransaction = new TransactionTemplate(transactionManager);
+        newReadOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        newReadOnlyTransaction.setReadOnly(true);
+        for (int slot = 0; slot < SLOTS; slot++)
+            slotShards.set(slot, slot % shards.size());
+        if (shards.size() == 1)
+            fanOutExecutor = null;
+        else if (virtualThreads)
+            fanOutExecutor = VirtualThreads.newThreadPerTaskExecutor();
+        else {
+            AtomicInteger threads = new AtomicInteger();
+            fanOutExecutor = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "shard-fan-out-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Loads the moved slots once Flyway has run.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (shards.size() == 1)
+            return;
+        new JdbcTemplate(shards.get(0)).query("select slot, shard from shard_slot", rs -> {
+            int shard = rs.getInt("shard");
+            if (shard >= shards.size())
+                throw new IllegalStateException("Slot " + rs.getInt("slot") + " belongs to missing shard " + shard);
+            slotShards.set(rs.getInt("slot"), shard);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (fanOutExecutor != null)
+            fanOutExecutor.shutdown();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    DataSource getDataSource(int shard) {
+        return shards.get(shard);
+    }
+
+    public static int slotOf(String accountNumber) {
+        return Math.floorMod(mix(accountNumber.hashCode()), SLOTS);
+    }
+
+    public int shardOfSlot(int slot) {
+        return slotShards.get(slot);
+    }
+
+    public int shardOf(String accountNumber) {
+        return shards.size() == 1 ? 0 : shardOfSlot(slotOf(accountNumber));
+    }
+
+    public int homeShardOf(String clientUsername) {
+        return shards.size() == 1 ? 0 : Math.floorMod(mix(clientUsername.hashCode()), shards.size());
+    }
+
+    /**
+     * The shard the calling thread is routed to, null meaning shard 0.
+     */
+    public static Integer currentShard() {
+        return CURRENT_SHARD.get();
+    }
+
+    /**
+     * Routes the calling thread to {@code shard} until {@link #restore} is called with the result.
+     * Must be called before a transaction begins, as its connection stays on the shard it started on.
+     */
+    public static Integer route(int shard) {
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        return previous;
+    }
+
+    public static void restore(Integer previous) {
+        if (previous == null)
+            CURRENT_SHARD.remove();
+        else
+            CURRENT_SHARD.set(previous);
+    }
+
+    private static int current() {
+        Integer shard = CURRENT_SHARD.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Runs {@code work} on {@code shard}, in a transaction of its own if the caller is in one on another shard.
+     */
+    public <T> T callOn(int shard, Supplier<T> work) {
+        if (shard == current())
+            return work.get();
+        Integer previous = route(shard);
+        try {
+            return TransactionSynchronizationManager.isActualTransactionActive()
+                   ? newTransaction.execute(status -> work.get()) : work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public void runOn(int shard, Runnable work) {
+        callOn(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs {@code work} in a transaction of its own on {@code shard}.
+     */
+    public <T> T callInTransactionOn(int shard, Supplier<T> work) {
+        Integer previous = route(shard);
+        try {
+            return newTransaction.execute(status -> work.get());
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Runs {@code work} in a read-only transaction of its own on {@code shard}.
+     */
+    public <T> T callReadOnlyOn(int shard, Supplier<T> work) {
+        Integer previous = route(shard);
+        try {
+            return newReadOnlyTransaction.execute(status -> work.get());
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Runs {@code work} on every shard in parallel.
+     *
+     * @return the results in shard order
+     */
+    public <T> List<T> callOnEachShard(Supplier<T> work) {
+        if (shards.size() == 1)
+            return Collections.singletonList(work.get());
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            int target = shard;
+            futures.add(fanOutExecutor.submit(() -> callOn(target, work)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        try {
+            for (Future<T> future : futures)
+                results.add(future.get());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Whether the caller is routed to the shard holding the client's active account counter.
+     */
+    public boolean isOnHomeShard(String clientUsername) {
+        return homeShardOf(clientUsername) == current();
+    }
+
+    /**
+     * Draws numbers until one falls on the shard the caller is routed to,
+     * so a new account is stored next to its client's counter.
+     * Its slot is held until the caller's transaction completes, so it is not moved meanwhile.
+     */
+    public String allocateOnCurrentShard(Supplier<String> allocator) {
+        if (shards.size() == 1)
+            return allocator.get();
+        int shard = current();
+        for (int attempt = 0; attempt < MAX_ALLOCATION_ATTEMPTS; attempt++) {
+            String accountNumber = allocator.get();
+            int slot = slotOf(accountNumber);
+            if (!tryEnter(slot))
+                continue;
+            if (shardOfSlot(slot) != shard) {
+                exit(slot);
+                continue;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    exit(slot);
+                }
+            });
+            return accountNumber;
+        }
+        throw new AccountException(ErrorCode.ACCOUNT_SHARD_UNAVAILABLE);
+    }
+
+    /**
+     * Counts a request on the slot until {@link #exit}, refusing it while the slot is being moved.
+     */
+    public void enter(int slot) {
+        if (!tryEnter(slot))
+            throw new TransactionException(ErrorCode.ACCOUNT_TRANSACTION_LOCK);
+    }
+
+    private boolean tryEnter(int slot) {
+        inFlight.incrementAndGet(slot);
+        if (frozen.get(slot) == 0)
+            return true;
+        inFlight.decrementAndGet(slot);
+        return false;
+    }
+
+    public void exit(int slot) {
+        inFlight.decrementAndGet(slot);
+    }
+
+    void freeze(int fromSlot, int toSlot) {
+        for (int slot = fromSlot; slot <= toSlot; slot++)
+            frozen.set(slot, 1);
+    }
+
+    void unfreeze(int fromSlot, int toSlot) {
+        for (int slot = fromSlot; slot <= toSlot; slot++)
+            frozen.set(slot, 0);
+    }
+
+    /**
+     * @return false if requests on the frozen slots are still running after {@code timeoutMs}
+     */
+    boolean awaitDrained(int fromSlot, int toSlot, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (int slot = fromSlot; slot <= toSlot; slot++) {
+            while (inFlight.get(slot) > 0) {
+                if (System.currentTimeMillis() > deadline)
+                    return false;
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands the slots to {@code shard}, on shard 0 first so a restart keeps the move.
+     */
+    void assignSlots(int fromSlot, int toSlot, int shard) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int slot = fromSlot; slot <= toSlot; slot++)
+            rows.add(new Object[] {slot, shard});
+        new JdbcTemplate(shards.get(0)).batchUpdate("merge into shard_slot key (slot) values (?, ?)", rows);
+        for (int slot = fromSlot; slot <= toSlot; slot++)
+            slotShards.set(slot, shard);
+    }
+
+    // spreads String.hashCode, whose low bits barely change between neighbouring numbers
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,131 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves ranges of slots, with their accounts and transactions, from whichever shard holds them to another one.
+ * <p>
+ * Writes to accounts of the moving slots are refused while the rows are copied, so the copy is exact.
+ * Reads go on and see every account on exactly one shard: the old one until the slots are handed over,
+ * the new one afterwards. The refusal only covers requests of this node, so with several nodes
+ * the others have to be kept off the moving accounts while it runs.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "account-manager.sharding.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ShardRebalancer {
+    private final ShardDirectory shardDirectory;
+
+    @Value("${account-manager.sharding.move-chunk-size}")
+    private int chunkSize;
+
+    @Value("${account-manager.sharding.drain-timeout-ms}")
+    private long drainTimeoutMs;
+
+    /**
+     * @param fromSlot first slot to move, inclusive
+     * @param toSlot last slot to move, inclusive
+     * @return the number of accounts moved
+     */
+    public int moveSlots(int fromSlot, int toSlot, int targetShard) throws InterruptedException {
+        if (fromSlot < 0 || toSlot >= ShardDirectory.SLOTS || fromSlot > toSlot)
+            throw new IllegalArgumentException("Slots must be a range within [0, " + ShardDirectory.SLOTS + ")");
+        if (targetShard < 0 || targetShard >= shardDirectory.getShardCount())
+            throw new IllegalArgumentException("There is no shard " + targetShard);
+        shardDirectory.freeze(fromSlot, toSlot);
+        try {
+            if (!shardDirectory.awaitDrained(fromSlot, toSlot, drainTimeoutMs))
+                throw new IllegalStateException("Requests on slots " + fromSlot + "-" + toSlot + " did not finish in time");
+            JdbcTemplate target = new JdbcTemplate(shardDirectory.getDataSource(targetShard));
+            TransactionTemplate targetTransaction = new TransactionTemplate(
+                new DataSourceTransactionManager(shardDirectory.getDataSource(targetShard)));
+            List<List<Long>> moving = new ArrayList<>();
+            int moved = 0;
+            for (int shard = 0; shard < shardDirectory.getShardCount(); shard++) {
+                List<Long> accountIds = shard == targetShard
+                                        ? Collections.emptyList() : accountIdsOf(shard, fromSlot, toSlot);
+                moving.add(accountIds);
+                JdbcTemplate source = new JdbcTemplate(shardDirectory.getDataSource(shard));
+                for (List<Long> chunk : chunks(accountIds))
+                    targetTransaction.executeWithoutResult(status -> copy(source, target, chunk));
+                moved += accountIds.size();
+            }
+            shardDirectory.assignSlots(fromSlot, toSlot, targetShard);
+            for (int shard = 0; shard < shardDirectory.getShardCount(); shard++) {
+                DataSource dataSource = shardDirectory.getDataSource(shard);
+                TransactionTemplate sourceTransaction = new TransactionTemplate(
+                    new DataSourceTransactionManager(dataSource));
+                for (List<Long> chunk : chunks(moving.get(shard)))
+                    sourceTransaction.executeWithoutResult(status -> delete(new JdbcTemplate(dataSource), chunk));
+            }
+            log.info("Moved {} accounts of slots {}-{} to shard {}", moved, fromSlot, toSlot, targetShard);
+            return moved;
+        } finally {
+            shardDirectory.unfreeze(fromSlot, toSlot);
+        }
+    }
+
+    private List<Long> accountIdsOf(int shard, int fromSlot, int toSlot) {
+        List<Long> accountIds = new ArrayList<>();
+        // the slot is a hash of the number, so every account of the shard has to be looked at
+        new JdbcTemplate(shardDirectory.getDataSource(shard)).query("select id, account_number from account", rs -> {
+            int slot = ShardDirectory.slotOf(rs.getString("account_number"));
+            if (slot >= fromSlot && slot <= toSlot && shardDirectory.shardOfSlot(slot) == shard)
+                accountIds.add(rs.getLong("id"));
+        });
+        return accountIds;
+    }
+
+    private List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += chunkSize)
+            chunks.add(ids.subList(start, Math.min(start + chunkSize, ids.size())));
+        return chunks;
+    }
+
+    private static void copy(JdbcTemplate source, JdbcTemplate target, List<Long> accountIds) {
+        // left behind by an earlier attempt that did not finish
+        delete(target, accountIds);
+        String ids = placeholders(accountIds.size());
+        insert(target, "account", source.queryForList("select * from account where id in " + ids, accountIds.toArray()));
+        insert(target, "transaction",
+               source.queryForList("select * from transaction where account_id in " + ids, accountIds.toArray()));
+    }
+
+    private static void delete(JdbcTemplate jdbcTemplate, List<Long> accountIds) {
+        String ids = placeholders(accountIds.size());
+        jdbcTemplate.update("delete from transaction where account_id in " + ids, accountIds.toArray());
+        jdbcTemplate.update("delete from account where id in " + ids, accountIds.toArray());
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty())
+            return;
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows)
+            values.add(columns.stream().map(row::get).toArray());
+        jdbcTemplate.batchUpdate("insert into " + table + " (" + String.join(", ", columns) + ") values "
+                                 + placeholders(columns.size()), values);
+    }
+
+    private static String placeholders(int count) {
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+}
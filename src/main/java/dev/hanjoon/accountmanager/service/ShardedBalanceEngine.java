@@ -0,0 +1,554 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.hanjoon.accountmanager.domain.Account;
+import dev.hanjoon.accountmanager.domain.SnowflakeIdGenerator;
+import dev.hanjoon.accountmanager.domain.Transaction;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchItem;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.engine.MpscRingBuffer;
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.journal.JournalEntry;
+import dev.hanjoon.accountmanager.repository.AccountRepository;
+import dev.hanjoon.accountmanager.repository.TransactionRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the balances of busy accounts in memory, split into shards by account number.
+ * <p>
+ * Every shard is owned by one thread taking spends and aborts from a lock-free ring buffer,
+ * so an account is never locked: its commands are simply run one after another.
+ * An account is loaded from the database on its first command and held while it has
+ * changes not yet in the database. Accepted changes are written by the shard's writer thread
+ * in batches, one database transaction per batch, and a request completes once its batch
+ * has committed. Changes are visible to the read endpoints from then on.
+ * <p>
+ * A batch failing on what may go away, like a lost connection, is retried until it is written.
+ * One the database refuses is written change by change, and the changes refused on their own
+ * fail their requests and are taken back out of the balances in memory.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "account-manager.transaction.mode", havingValue = "engine")
+@RequiredArgsConstructor
+public class ShardedBalanceEngine implements TransactionProcessor, PendingBalanceChanges, SmartLifecycle {
+    // started before the web server accepts requests and stopped after it no longer does
+    private static final int PHASE = Integer.MAX_VALUE - 1024;
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final TransactionService transactionService;
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final AccountListCacheService accountListCacheService;
+    private final JournalEntryWriter journalEntryWriter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${account-manager.engine.shards}")
+    private int shardCount;
+    @Value("${account-manager.engine.ring-size}")
+    private int ringSize;
+    @Value("${account-manager.engine.write-batch-size}")
+    private int writeBatchSize;
+    @Value("${account-manager.engine.retry-backoff-ms}")
+    private long retryBackoffMs;
+    @Value("${account-manager.batch.max-size}")
+    private int maxBatchSize;
+    @Value("${account-manager.id.node-id}")
+    private int nodeId;
+
+    // changes accepted but not committed, per account number, read by other threads
+    private final Map<String, Integer> unwritten = new ConcurrentHashMap<>();
+    private SnowflakeIdGenerator idGenerator;
+    private Shard[] shards;
+    private volatile boolean accepting;
+    private volatile boolean running;
+
+    public CompletableFuture<SpendBalanceResponse> submitSpend(SpendBalanceRequest request) {
+        Command command = new Command(JournalEntry.Type.SPEND, request, null);
+        submit(request.getAccountNumber(), command);
+        return command.result.thenApply(ShardedBalanceEngine::spendResponse);
+    }
+
+    public CompletableFuture<AbortTransactionResponse> submitAbort(AbortTransactionRequest request) {
+        Command command = new Command(JournalEntry.Type.ABORT, null, request);
+        submit(request.getAccountNumber(), command);
+        return command.result.thenApply(ShardedBalanceEngine::abortResponse);
+    }
+
+    @Override
+    public SpendBalanceResponse spendBalance(SpendBalanceRequest request) {
+        return join(submitSpend(request));
+    }
+
+    @Override
+    public SpendBalanceBatchResponse spendBalances(List<SpendBalanceRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new TransactionException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE);
+        List<CompletableFuture<SpendBalanceResponse>> futures = new ArrayList<>(requests.size());
+        for (SpendBalanceRequest request : requests)
+            futures.add(submitSpend(request));
+        List<SpendBalanceBatchItem> results = new ArrayList<>(requests.size());
+        for (CompletableFuture<SpendBalanceResponse> future : futures) {
+            ErrorCode errorCode;
+            try {
+                results.add(SpendBalanceBatchItem.builder()
+                                                 .response(join(future))
+                                                 .build());
+                continue;
+            } catch (AccountException e) {
+                errorCode = e.getErrorCode();
+            } catch (TransactionException e) {
+                errorCode = e.getErrorCode();
+            }
+            results.add(SpendBalanceBatchItem.builder()
+                                             .errorCode(errorCode)
+                                             .errorMsg(errorCode.getDescription())
+                                             .build());
+        }
+        return new SpendBalanceBatchResponse(results);
+    }
+
+    @Override
+    public AbortTransactionResponse abortTransaction(AbortTransactionRequest request) {
+        return join(submitAbort(request));
+    }
+
+    @Override
+    public AbortTransactionBatchResponse abortTransactions(List<AbortTransactionRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new TransactionException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE);
+        List<CompletableFuture<AbortTransactionResponse>> futures = new ArrayList<>(requests.size());
+        for (AbortTransactionRequest request : requests)
+            futures.add(submitAbort(request));
+        List<AbortTransactionBatchItem> results = new ArrayList<>(requests.size());
+        for (CompletableFuture<AbortTransactionResponse> future : futures) {
+            ErrorCode errorCode;
+            try {
+                results.add(AbortTransactionBatchItem.builder()
+                                                     .response(join(future))
+                                                     .build());
+                continue;
+            } catch (AccountException e) {
+                errorCode = e.getErrorCode();
+            } catch (TransactionException e) {
+                errorCode = e.getErrorCode();
+            }
+            results.add(AbortTransactionBatchItem.builder()
+                                                 .errorCode(errorCode)
+                                                 .errorMsg(errorCode.getDescription())
+                                                 .build());
+        }
+        return new AbortTransactionBatchResponse(results);
+    }
+
+    @Override
+    public boolean hasPendingChanges(String accountNumber) {
+        return unwritten.containsKey(accountNumber);
+    }
+
+    @Override
+    public void start() {
+        idGenerator = new SnowflakeIdGenerator(nodeId);
+        shards = new Shard[shardCount];
+        running = true;
+        accepting = true;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+            shards[i].start(i);
+        }
+    }
+
+    /**
+     * Runs the commands already submitted and waits for their changes to be written,
+     * unless writing fails, in which case they are failed.
+     */
+    @Override
+    public void stop() {
+        accepting = false;
+        running = false;
+        for (Shard shard : shards)
+            shard.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return accepting;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void submit(String accountNumber, Command command) {
+        if (accountNumber == null) {
+            command.result.completeExceptionally(new AccountException(ErrorCode.ACCOUNT_NOT_FOUND));
+            return;
+        }
+        if (!accepting)
+            throw new IllegalStateException("Balance engine is not running");
+        MpscRingBuffer<Command> commands = shards[Math.floorMod(accountNumber.hashCode(), shardCount)].commands;
+        // a full ring pushes back on the caller instead of growing
+        while (!commands.offer(command))
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    private static SpendBalanceResponse spendResponse(JournalEntry entry) {
+        return new SpendBalanceResponse(entry.getAccountNumber(),
+                                        TransactionStatus.COMMITTED,
+                                        entry.getTransactionId(),
+                                        entry.getAmount(),
+                                        entry.getTimestamp());
+    }
+
+    private static AbortTransactionResponse abortResponse(JournalEntry entry) {
+        return new AbortTransactionResponse(entry.getAccountNumber(),
+                                            TransactionStatus.ABORTED,
+                                            entry.getTransactionId(),
+                                            entry.getAmount(),
+                                            entry.getTimestamp());
+    }
+
+    /**
+     * A spend or an abort to run, or a batch of changes that has just been written, but for the failed ones.
+     */
+    private static final class Command {
+        private final JournalEntry.Type type;
+        private final SpendBalanceRequest spend;
+        private final AbortTransactionRequest abort;
+        private final CompletableFuture<JournalEntry> result = new CompletableFuture<>();
+        private final List<JournalEntry> written;
+        private final List<JournalEntry> failed;
+
+        private Command(JournalEntry.Type type, SpendBalanceRequest spend, AbortTransactionRequest abort) {
+            this.type = type;
+            this.spend = spend;
+            this.abort = abort;
+            this.written = null;
+            this.failed = null;
+        }
+
+        private Command(List<JournalEntry> written, List<JournalEntry> failed) {
+            this.type = null;
+            this.spend = null;
+            this.abort = null;
+            this.written = written;
+            this.failed = failed;
+        }
+    }
+
+    private static final class Accepted {
+        private final JournalEntry entry;
+        private final CompletableFuture<JournalEntry> result;
+
+        private Accepted(JournalEntry entry, CompletableFuture<JournalEntry> result) {
+            this.entry = entry;
+            this.result = result;
+        }
+    }
+
+    private static final class AccountState {
+        private final Account account;
+        private long balance;
+
+        private AccountState(Account account) {
+            this.account = account;
+            this.balance = account.getBalance();
+        }
+    }
+
+    private final class Shard {
+        private final MpscRingBuffer<Command> commands = new MpscRingBuffer<>(ringSize);
+        private final BlockingQueue<Accepted> accepted = new LinkedBlockingQueue<>();
+        // owned by the shard thread
+        private final Map<String, AccountState> accounts = new HashMap<>();
+        private final Map<Long, JournalEntry> unwrittenSpends = new HashMap<>();
+        private final Set<Long> unwrittenAborts = new HashSet<>();
+        private Thread owner;
+        private Thread writer;
+        private volatile boolean writing;
+
+        private void start(int index) {
+            writing = true;
+            owner = new Thread(this::run, "balance-shard-" + index);
+            owner.setDaemon(true);
+            owner.start();
+            writer = new Thread(this::writeLoop, "balance-writer-" + index);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        private void stop() {
+            try {
+                owner.join();
+                writing = false;
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // submitted while the engine was stopping
+            for (Command command = commands.poll(); command != null; command = commands.poll())
+                if (command.written == null)
+                    command.result.completeExceptionally(new IllegalStateException("Balance engine is stopped"));
+        }
+
+        private void run() {
+            int idle = 0;
+            while (true) {
+                Command command = commands.poll();
+                if (command == null) {
+                    if (!running && commands.isEmpty())
+                        return;
+                    if (++idle < IDLE_SPINS) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    continue;
+                }
+                idle = 0;
+                try {
+                    if (command.written != null)
+                        release(command.written, command.failed);
+                    else if (command.type == JournalEntry.Type.SPEND)
+                        accept(command, spend(command.spend));
+                    else
+                        accept(command, abort(command.abort));
+                } catch (RuntimeException e) {
+                    command.result.completeExceptionally(e);
+                }
+            }
+        }
+
+        private JournalEntry spend(SpendBalanceRequest request) {
+            AccountState state = load(request.getAccountNumber());
+            transactionService.validateSpend(state == null ? null : state.account, request,
+                                             state == null ? 0L : state.balance);
+            state.balance -= request.getAmount();
+            JournalEntry entry = entry(JournalEntry.Type.SPEND, state, idGenerator.nextId(), request.getAmount());
+            unwrittenSpends.put(entry.getTransactionId(), entry);
+            return entry;
+        }
+
+        private JournalEntry abort(AbortTransactionRequest request) {
+            AccountState state = load(request.getAccountNumber());
+            if (state == null)
+                throw new AccountException(ErrorCode.ACCOUNT_NOT_FOUND);
+            Long accountId;
+            Long amount;
+            TransactionStatus status;
+            JournalEntry spend = unwrittenSpends.get(request.getTransactionId());
+            if (spend != null) {
+                accountId = spend.getAccountId();
+                amount = spend.getAmount();
+                status = TransactionStatus.COMMITTED;
+            } else {
+                Transaction transaction = transactionRepository.findById(
+                    request.getTransactionId())
+                           .orElseThrow(() -> new TransactionException(
+                                        ErrorCode.TRANSACTION_NOT_FOUND));
+                accountId = transaction.getAccount().getId();
+                amount = transaction.getAmount();
+                status = transaction.getTransactionStatus();
+            }
+            if (!accountId.equals(state.account.getId()))
+                throw new TransactionException(
+                    ErrorCode.TRANSACTION_ACCOUNT_NOT_MATCHED);
+            if (!amount.equals(request.getAmount()))
+                throw new TransactionException(
+                    ErrorCode.TRANSACTION_INVALID_AMOUNT);
+            if (unwrittenAborts.contains(request.getTransactionId()) || status != TransactionStatus.COMMITTED)
+                throw new TransactionException(
+                    ErrorCode.TRANSACTION_NOT_COMMITTED);
+            state.balance += amount;
+            unwrittenAborts.add(request.getTransactionId());
+            return entry(JournalEntry.Type.ABORT, state, request.getTransactionId(), amount);
+        }
+
+        private AccountState load(String accountNumber) {
+            AccountState state = accounts.get(accountNumber);
+            if (state != null)
+                return state;
+            Account account = accountRepository.findWithClientByAccountNumber(accountNumber).orElse(null);
+            if (account == null)
+                return null;
+            state = new AccountState(account);
+            accounts.put(accountNumber, state);
+            return state;
+        }
+
+        private JournalEntry entry(JournalEntry.Type type, AccountState state, Long transactionId, Long amount) {
+            return JournalEntry.builder()
+                               .type(type)
+                               .transactionId(transactionId)
+                               .accountId(state.account.getId())
+                               .accountNumber(state.account.getAccountNumber())
+                               .clientUsername(state.account.getClient().getUsername())
+                               .amount(amount)
+                               .timestamp(LocalDateTime.now())
+                               .build();
+        }
+
+        private void accept(Command command, JournalEntry entry) {
+            unwritten.merge(entry.getAccountNumber(), 1, Integer::sum);
+            accepted.add(new Accepted(entry, command.result));
+        }
+
+        /**
+         * Takes the failed changes back out of the balances, then forgets the batch, and accounts
+         * with nothing left to write, which are read from the database again on their next command.
+         */
+        private void release(List<JournalEntry> written, List<JournalEntry> failed) {
+            Set<Long> failedAborts = new HashSet<>();
+            for (JournalEntry entry : failed)
+                if (entry.getType() == JournalEntry.Type.ABORT)
+                    failedAborts.add(entry.getTransactionId());
+            for (JournalEntry entry : failed) {
+                AccountState state = accounts.get(entry.getAccountNumber());
+                if (entry.getType() == JournalEntry.Type.ABORT) {
+                    state.balance -= entry.getAmount();
+                    continue;
+                }
+                state.balance += entry.getAmount();
+                // an abort of it credits nothing in the database, as the spend is not there
+                if (unwrittenAborts.contains(entry.getTransactionId())
+                    && !failedAborts.contains(entry.getTransactionId()))
+                    state.balance -= entry.getAmount();
+            }
+            for (JournalEntry entry : written) {
+                if (entry.getType() == JournalEntry.Type.SPEND)
+                    unwrittenSpends.remove(entry.getTransactionId());
+                else
+                    unwrittenAborts.remove(entry.getTransactionId());
+                Integer left = unwritten.computeIfPresent(entry.getAccountNumber(),
+                                                          (k, count) -> count == 1 ? null : count - 1);
+                if (left == null)
+                    accounts.remove(entry.getAccountNumber());
+            }
+        }
+
+        private void writeLoop() {
+            List<Accepted> batch = new ArrayList<>(writeBatchSize);
+            while (true) {
+                Accepted first;
+                try {
+                    first = accepted.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (first == null) {
+                    if (!writing)
+                        return;
+                    continue;
+                }
+                batch.add(first);
+                accepted.drainTo(batch, writeBatchSize - 1);
+                List<JournalEntry> entries = new ArrayList<>(batch.size());
+                for (Accepted change : batch)
+                    entries.add(change.entry);
+                List<RuntimeException> failures = write(entries);
+                List<JournalEntry> failed = new ArrayList<>();
+                Set<String> usernames = new HashSet<>();
+                for (int i = 0; i < entries.size(); i++) {
+                    if (failures.get(i) != null)
+                        failed.add(entries.get(i));
+                    else if (usernames.add(entries.get(i).getClientUsername()))
+                        accountListCacheService.evictAfterCommit(entries.get(i).getClientUsername());
+                }
+                // the shard forgets them before a request waiting on them can send another one
+                while (!commands.offer(new Command(entries, failed)))
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (failures.get(i) == null)
+                        batch.get(i).result.complete(batch.get(i).entry);
+                    else
+                        batch.get(i).result.completeExceptionally(failures.get(i));
+                }
+                batch.clear();
+            }
+        }
+
+        /**
+         * @return the failure of each change, null for the ones written
+         */
+        private List<RuntimeException> write(List<JournalEntry> entries) {
+            RuntimeException failure = writeWithRetry(entries);
+            List<RuntimeException> failures = new ArrayList<>(Collections.nCopies(entries.size(), failure));
+            if (failure == null || entries.size() == 1 || JournalEntryWriter.isTransient(failure))
+                return failures;
+            // to fail only the changes refused on their own
+            for (int i = 0; i < entries.size(); i++)
+                failures.set(i, writeWithRetry(List.of(entries.get(i))));
+            return failures;
+        }
+
+        /**
+         * @return null once written, the failure if the database refused them,
+         *         or the last failure if the engine stopped before they were written
+         */
+        private RuntimeException writeWithRetry(List<JournalEntry> entries) {
+            while (true) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> journalEntryWriter.write(entries));
+                    return null;
+                } catch (RuntimeException e) {
+                    if (!JournalEntryWriter.isTransient(e)) {
+                        log.warn("Database refused {} balance changes", entries.size(), e);
+                        return e;
+                    }
+                    log.warn("Failed to write {} balance changes to the database", entries.size(), e);
+                    if (!writing)
+                        return e;
+                }
+                try {
+                    Thread.sleep(retryBackoffMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return new IllegalStateException("Balance engine is stopped");
+                }
+            }
+        }
+    }
+}
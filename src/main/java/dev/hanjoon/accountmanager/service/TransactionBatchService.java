@@ -0,0 +1,162 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import dev.hanjoon.accountmanager.domain.Transaction;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchItem;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
+import dev.hanjoon.accountmanager.dto.AbortTransactionGroup;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceGroup;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.repository.TransactionRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Splits a batch into per-account groups and hands each group to {@link TransactionService},
+ * so every account is loaded, locked and debited or credited once per batch.
+ * A failing group never rolls back the others.
+ */
+@Service
+@RequiredArgsConstructor
+public class TransactionBatchService {
+    private final TransactionService transactionService;
+    private final TransactionRepository transactionRepository;
+    private final ShardDirectory shardDirectory;
+
+    @Value("${account-manager.batch.max-size}")
+    private int maxBatchSize;
+
+    public SpendBalanceBatchResponse spendBalances(List<SpendBalanceRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new TransactionException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE);
+        SpendBalanceBatchItem[] results = new SpendBalanceBatchItem[requests.size()];
+        Map<String, List<Integer>> indexesByAccount = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String accountNumber = requests.get(i).getAccountNumber();
+            if (accountNumber == null)
+                results[i] = spendFailed(ErrorCode.ACCOUNT_NOT_FOUND);
+            else
+                indexesByAccount.computeIfAbsent(accountNumber, k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : indexesByAccount.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            List<SpendBalanceRequest> group = new ArrayList<>(indexes.size());
+            for (int index : indexes)
+                group.add(requests.get(index));
+            List<SpendBalanceBatchItem> groupResults;
+            try {
+                groupResults = transactionService.spendBalanceGroup(
+                    new SpendBalanceGroup(entry.getKey(), group));
+            } catch (AccountException e) {
+                groupResults = Collections.nCopies(group.size(), spendFailed(e.getErrorCode()));
+            } catch (TransactionException e) {
+                groupResults = Collections.nCopies(group.size(), spendFailed(e.getErrorCode()));
+            }
+            for (int i = 0; i < indexes.size(); i++)
+                results[indexes.get(i)] = groupResults.get(i);
+        }
+        return new SpendBalanceBatchResponse(Arrays.asList(results));
+    }
+
+    public AbortTransactionBatchResponse abortTransactions(List<AbortTransactionRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new TransactionException(ErrorCode.TRANSACTION_BATCH_TOO_LARGE);
+        Set<Long> ids = new HashSet<>();
+        for (AbortTransactionRequest request : requests)
+            if (request.getTransactionId() != null)
+                ids.add(request.getTransactionId());
+        Map<Long, Transaction> transactions = new HashMap<>();
+        List<List<Transaction>> shards = shardDirectory.callOnEachShard(
+            () -> transactionRepository.findAllWithAccountByIdIn(ids));
+        for (int shard = 0; shard < shards.size(); shard++)
+            for (Transaction transaction : shards.get(shard))
+                // copies on a shard the account has been moved from or to are left out
+                if (shards.size() == 1
+                    || shardDirectory.shardOf(transaction.getAccount().getAccountNumber()) == shard)
+                    transactions.put(transaction.getId(), transaction);
+
+        AbortTransactionBatchItem[] results = new AbortTransactionBatchItem[requests.size()];
+        Map<String, List<Integer>> indexesByAccount = new LinkedHashMap<>();
+        Set<Long> requested = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            AbortTransactionRequest request = requests.get(i);
+            Transaction transaction = transactions.get(request.getTransactionId());
+            if (transaction == null)
+                results[i] = abortFailed(ErrorCode.TRANSACTION_NOT_FOUND);
+            else if (!transaction.getAccount().getAccountNumber().equals(request.getAccountNumber()))
+                results[i] = abortFailed(ErrorCode.TRANSACTION_ACCOUNT_NOT_MATCHED);
+            else if (!transaction.getAmount().equals(request.getAmount()))
+                results[i] = abortFailed(ErrorCode.TRANSACTION_INVALID_AMOUNT);
+            else if (transaction.getTransactionStatus() != TransactionStatus.COMMITTED
+                     || !requested.add(transaction.getId()))
+                results[i] = abortFailed(ErrorCode.TRANSACTION_NOT_COMMITTED);
+            else
+                indexesByAccount.computeIfAbsent(request.getAccountNumber(), k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : indexesByAccount.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            List<Long> transactionIds = new ArrayList<>(indexes.size());
+            String clientUsername = transactions.get(requests.get(indexes.get(0)).getTransactionId())
+                                                .getAccount().getClient().getUsername();
+            long amount = 0L;
+            for (int index : indexes) {
+                transactionIds.add(requests.get(index).getTransactionId());
+                amount += requests.get(index).getAmount();
+            }
+            try {
+                LocalDateTime abortedAt = transactionService.abortTransactionGroup(
+                    new AbortTransactionGroup(entry.getKey(), clientUsername, transactionIds, amount));
+                for (int index : indexes)
+                    results[index] = AbortTransactionBatchItem.builder()
+                                                              .response(new AbortTransactionResponse(
+                                                                  entry.getKey(),
+                                                                  TransactionStatus.ABORTED,
+                                                                  requests.get(index).getTransactionId(),
+                                                                  requests.get(index).getAmount(),
+                                                                  abortedAt))
+                                                              .build();
+            } catch (AccountException e) {
+                for (int index : indexes)
+                    results[index] = abortFailed(e.getErrorCode());
+            } catch (TransactionException e) {
+                for (int index : indexes)
+                    results[index] = abortFailed(e.getErrorCode());
+            }
+        }
+        return new AbortTransactionBatchResponse(Arrays.asList(results));
+    }
+
+    private SpendBalanceBatchItem spendFailed(ErrorCode errorCode) {
+        return SpendBalanceBatchItem.builder()
+                                    .errorCode(errorCode)
+                                    .errorMsg(errorCode.getDescription())
+                                    .build();
+    }
+
+    private AbortTransactionBatchItem abortFailed(ErrorCode errorCode) {
+        return AbortTransactionBatchItem.builder()
+                                        .errorCode(errorCode)
+                                        .errorMsg(errorCode.getDescription())
+                                        .build();
+    }
+}
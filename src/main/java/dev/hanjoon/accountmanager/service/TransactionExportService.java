@@ -0,0 +1,90 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.hanjoon.accountmanager.domain.Transaction;
+import dev.hanjoon.accountmanager.dto.TransactionExportRecord;
+import dev.hanjoon.accountmanager.repository.TransactionRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+
+@Service
+@RequiredArgsConstructor
+public class TransactionExportService {
+    private final TransactionRepository transactionRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ShardDirectory shardDirectory;
+
+    @Value("${account-manager.export.flush-rows}")
+    private int flushRows;
+
+    /**
+     * Writes every transaction created in [from, to) as one JSON object per line,
+     * shard after shard and in creation order within a shard.
+     * Rows are read through a forward-only cursor and detached once written,
+     * so memory use does not grow with the number of rows.
+     *
+     * @return the number of transactions written
+     */
+    public long exportTransactions(LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        long written = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            // the response stream belongs to the container
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            for (int shard = 0; shard < shardDirectory.getShardCount(); shard++) {
+                int exported = shard;
+                long before = written;
+                try {
+                    written = shardDirectory.callReadOnlyOn(shard,
+                        () -> exportShard(exported, from, to, generator, before));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+        return written;
+    }
+
+    private long exportShard(int shard, LocalDateTime from, LocalDateTime to,
+                             JsonGenerator generator, long written) {
+        try (Stream<Transaction> transactions = transactionRepository.streamByCreatedAtRange(from, to)) {
+            for (Transaction transaction : (Iterable<Transaction>) transactions::iterator) {
+                // a copy on a shard its account has been moved from or to is written by the owning shard
+                if (shardDirectory.getShardCount() == 1
+                    || shardDirectory.shardOf(transaction.getAccount().getAccountNumber()) == shard) {
+                    generator.writeObject(toRecord(transaction));
+                    generator.writeRaw('\n');
+                    if (++written % flushRows == 0)
+                        generator.flush();
+                }
+                entityManager.detach(transaction);
+                entityManager.detach(transaction.getAccount());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return written;
+    }
+
+    private static TransactionExportRecord toRecord(Transaction transaction) {
+        return TransactionExportRecord.builder()
+                                      .transactionId(transaction.getId())
+                                      .accountNumber(transaction.getAccount().getAccountNumber())
+                                      .transactionStatus(transaction.getTransactionStatus())
+                                      .amount(transaction.getAmount())
+                                      .createdAt(transaction.getCreatedAt())
+                                      .abortedAt(transaction.getAbortedAt())
+                                      .build();
+    }
+}
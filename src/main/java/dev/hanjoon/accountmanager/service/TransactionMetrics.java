@@ -0,0 +1,66 @@
+package dev.hanjoon.accountmanager.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Number of transactions spent and aborted and the sum of their amounts, as "transactions" and "transactions.amount".
+ * They are recorded once the database transaction writing them commits, so a rolled back one is never counted.
+ */
+@Component
+public class TransactionMetrics {
+    private final Counter committed;
+    private final Counter committedAmount;
+    private final Counter aborted;
+    private final Counter abortedAmount;
+
+    public TransactionMetrics(MeterRegistry meterRegistry) {
+        this.committed = count(meterRegistry, TransactionStatus.COMMITTED);
+        this.committedAmount = amount(meterRegistry, TransactionStatus.COMMITTED);
+        this.aborted = count(meterRegistry, TransactionStatus.ABORTED);
+        this.abortedAmount = amount(meterRegistry, TransactionStatus.ABORTED);
+    }
+
+    private static Counter count(MeterRegistry meterRegistry, TransactionStatus status) {
+        return Counter.builder("transactions")
+                      .description("Transactions written")
+                      .tag("status", status.name().toLowerCase())
+                      .register(meterRegistry);
+    }
+
+    private static Counter amount(MeterRegistry meterRegistry, TransactionStatus status) {
+        return Counter.builder("transactions.amount")
+                      .description("Sum of the amounts of the transactions written")
+                      .tag("status", status.name().toLowerCase())
+                      .register(meterRegistry);
+    }
+
+    /**
+     * @param status COMMITTED for spends, ABORTED for aborts
+     */
+    public void recordAfterCommit(TransactionStatus status, int count, long amount) {
+        if (count == 0)
+            return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(status, count, amount);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(status, count, amount);
+            }
+        });
+    }
+
+    private void record(TransactionStatus status, int count, long amount) {
+        boolean abort = status == TransactionStatus.ABORTED;
+        (abort ? aborted : committed).increment(count);
+        (abort ? abortedAmount : committedAmount).increment(amount);
+    }
+}
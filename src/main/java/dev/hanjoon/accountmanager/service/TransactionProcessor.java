@@ -0,0 +1,26 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.List;
+
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchResponse;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+
+/**
+ * Carries out the requests that change balances.
+ * The implementation is picked with {@code account-manager.transaction.mode}:
+ * {@code direct} (default) writes each request to the database before answering it,
+ * {@code journal} answers once the request is in the local journal and writes it later.
+ */
+public interface TransactionProcessor {
+    SpendBalanceResponse spendBalance(SpendBalanceRequest request);
+
+    SpendBalanceBatchResponse spendBalances(List<SpendBalanceRequest> requests);
+
+    AbortTransactionResponse abortTransaction(AbortTransactionRequest request);
+
+    AbortTransactionBatchResponse abortTransactions(List<AbortTransactionRequest> requests);
+}
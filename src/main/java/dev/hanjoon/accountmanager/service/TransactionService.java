@@ -1,18 +1,33 @@
 package dev.hanjoon.accountmanager.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import dev.hanjoon.accountmanager.aop.AccountLock;
+import dev.hanjoon.accountmanager.aop.RetryOnConflict;
 import dev.hanjoon.accountmanager.domain.Account;
-import dev.hanjoon.accountmanager.domain.Client;
 import dev.hanjoon.accountmanager.domain.Transaction;
+import dev.hanjoon.accountmanager.dto.AbortTransactionGroup;
 import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
 import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
 import dev.hanjoon.accountmanager.dto.CheckTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
+import dev.hanjoon.accountmanager.dto.SpendBalanceGroup;
 import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
 import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.dto.TransactionHistoryItem;
+import dev.hanjoon.accountmanager.dto.TransactionHistoryResponse;
 import dev.hanjoon.accountmanager.exception.AccountException;
 import dev.hanjoon.accountmanager.exception.TransactionException;
 import dev.hanjoon.accountmanager.repository.AccountRepository;
@@ -25,40 +40,48 @@ import lombok.RequiredArgsConstructor;
 @Service
 @RequiredArgsConstructor
 public class TransactionService {
+    // stand-ins for open ends of the history range, kept within what the database can store
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime HISTORY_END = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     private final AccountRepository accountRepository;
     private final TransactionRepository transactionRepository;
     private final AccountService accountService;
+    private final AccountListCacheService accountListCacheService;
+    private final ShardDirectory shardDirectory;
+    private final TransactionMetrics transactionMetrics;
+
+    @Value("${account-manager.history.default-page-size}")
+    private int defaultPageSize;
+    @Value("${account-manager.history.max-page-size}")
+    private int maxPageSize;
 
     @Transactional
+    @AccountLock
+    @RetryOnConflict
     public SpendBalanceResponse spendBalance(SpendBalanceRequest request) {
-        Client client = accountService.getClientByUsername(
-            request.getClientUsername());
-        Account account = accountService.getAccountByAccountNumber(
-            request.getAccountNumber());
-        if (!account.getClient().getUsername().equals(client.getUsername()))
-            throw new AccountException(
-                ErrorCode.ACCOUNT_OWNED_BY_OTHER_CLIENT);
-        if (account.getAccountStatus() == AccountStatus.CLOSED)
-            throw new AccountException(
-                ErrorCode.ACCOUNT_CLOSED);
-        if (account.getBalance() < request.getAmount())
+        Account account = accountRepository.findWithClientByAccountNumber(
+            request.getAccountNumber()).orElse(null);
+        validateSpend(account, request, account == null ? 0L : account.getBalance());
+        if (accountRepository.withdrawBalance(account.getAccountNumber(),
+                                              request.getAmount(),
+                                              LocalDateTime.now()) == 0) {
+            // the account has been changed by someone else since it was read above
+            if (accountRepository.findAccountStatusByAccountNumber(account.getAccountNumber())
+                                 .orElse(null) == AccountStatus.CLOSED)
+                throw new AccountException(
+                    ErrorCode.ACCOUNT_CLOSED);
             throw new TransactionException(
                 ErrorCode.TRANSACTION_INSUFFICIENT_FUNDS);
-        if (request.getAmount() < 100L)
-            throw new TransactionException(
-                ErrorCode.TRANSACTION_BELOW_MIN_THRESHOLD);
-        else if (request.getAmount() > 1_000_000_000L)
-            throw new TransactionException(
-                ErrorCode.TRANSACTION_EXCEEDS_MAX_THRESHOLD);
-        Transaction transaction = Transaction.builder()
-                                             .account(account)
-                                             .transactionStatus(TransactionStatus.ACTIVE)
-                                             .amount(request.getAmount())
-                                             .build();
-        account.setBalance(account.getBalance() - request.getAmount());
-        transactionRepository.save(transaction);
-        accountRepository.save(account);
-        transaction.setTransactionStatus(TransactionStatus.COMMITTED);
+        }
+        Transaction transaction = transactionRepository.save(
+            Transaction.builder()
+                       .account(account)
+                       .transactionStatus(TransactionStatus.COMMITTED)
+                       .amount(request.getAmount())
+                       .build());
+        accountListCacheService.evictAfterCommit(account.getClient().getUsername());
+        transactionMetrics.recordAfterCommit(TransactionStatus.COMMITTED, 1, request.getAmount());
         return new SpendBalanceResponse(account.getAccountNumber(),
                                       transaction.getTransactionStatus(),
                                       transaction.getId(),
@@ -66,15 +89,82 @@ public class TransactionService {
                                       transaction.getCreatedAt());
     }
 
+    /**
+     * Applies every spend of one account with a single debit and a single transaction.
+     * Requests failing validation are reported in their slot and do not affect the others.
+     */
+    @Transactional
+    @AccountLock
+    public List<SpendBalanceBatchItem> spendBalanceGroup(SpendBalanceGroup group) {
+        Account account = accountRepository.findWithClientByAccountNumber(
+            group.getAccountNumber()).orElse(null);
+        long balance = account == null ? 0L : account.getBalance();
+        List<SpendBalanceBatchItem> results = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        for (SpendBalanceRequest request : group.getRequests()) {
+            ErrorCode errorCode = null;
+            try {
+                validateSpend(account, request, balance);
+            } catch (AccountException e) {
+                errorCode = e.getErrorCode();
+            } catch (TransactionException e) {
+                errorCode = e.getErrorCode();
+            }
+            if (errorCode != null) {
+                results.add(SpendBalanceBatchItem.builder()
+                                                 .errorCode(errorCode)
+                                                 .errorMsg(errorCode.getDescription())
+                                                 .build());
+                continue;
+            }
+            balance -= request.getAmount();
+            transactions.add(Transaction.builder()
+                                        .account(account)
+                                        .transactionStatus(TransactionStatus.COMMITTED)
+                                        .amount(request.getAmount())
+                                        .build());
+            results.add(null);
+        }
+        if (transactions.isEmpty())
+            return results;
+        if (accountRepository.withdrawBalance(account.getAccountNumber(),
+                                              account.getBalance() - balance,
+                                              LocalDateTime.now()) == 0)
+            throw new TransactionException(
+                ErrorCode.TRANSACTION_INSUFFICIENT_FUNDS);
+        Iterator<Transaction> saved = transactionRepository.saveAll(transactions).iterator();
+        accountListCacheService.evictAfterCommit(account.getClient().getUsername());
+        transactionMetrics.recordAfterCommit(TransactionStatus.COMMITTED, transactions.size(),
+                                             account.getBalance() - balance);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) != null)
+                continue;
+            Transaction transaction = saved.next();
+            results.set(i, SpendBalanceBatchItem.builder()
+                                                .response(new SpendBalanceResponse(
+                                                    account.getAccountNumber(),
+                                                    transaction.getTransactionStatus(),
+                                                    transaction.getId(),
+                                                    transaction.getAmount(),
+                                                    transaction.getCreatedAt()))
+                                                .build());
+        }
+        return results;
+    }
+
     @Transactional
+    @AccountLock
+    @RetryOnConflict
     public AbortTransactionResponse abortTransaction(AbortTransactionRequest request) {
-        Account account = accountService.getAccountByAccountNumber(
-            request.getAccountNumber());
+        Account account = accountRepository.findWithClientByAccountNumber(
+            request.getAccountNumber())
+                   .orElseThrow(() -> new AccountException(
+                                ErrorCode.ACCOUNT_NOT_FOUND));
         Transaction transaction = transactionRepository.findById(
             request.getTransactionId())
                    .orElseThrow(() -> new TransactionException(
                                 ErrorCode.TRANSACTION_NOT_FOUND));
-        if (!transaction.getAccount().equals(account))
+        if (!transaction.getAccount().getId().equals(account.getId()))
             throw new TransactionException(
                 ErrorCode.TRANSACTION_ACCOUNT_NOT_MATCHED);
         if (!transaction.getAmount().equals(request.getAmount()))
@@ -88,6 +178,8 @@ public class TransactionService {
         account.setBalance(account.getBalance() + request.getAmount());
         accountRepository.save(account);
         transactionRepository.save(transaction);
+        accountListCacheService.evictAfterCommit(account.getClient().getUsername());
+        transactionMetrics.recordAfterCommit(TransactionStatus.ABORTED, 1, request.getAmount());
         return new AbortTransactionResponse(account.getAccountNumber(),
                                         transaction.getTransactionStatus(),
                                         transaction.getId(),
@@ -95,14 +187,135 @@ public class TransactionService {
                                         transaction.getAbortedAt());
     }
 
+    /**
+     * Aborts already validated transactions of one account with a single credit.
+     * Fails as a whole if any of them has been aborted in the meantime.
+     *
+     * @return the time the transactions were aborted at
+     */
+    @Transactional
+    @AccountLock
+    public LocalDateTime abortTransactionGroup(AbortTransactionGroup group) {
+        LocalDateTime now = LocalDateTime.now();
+        if (transactionRepository.abortCommittedTransactions(group.getTransactionIds(), now)
+            != group.getTransactionIds().size())
+            throw new TransactionException(
+                ErrorCode.TRANSACTION_NOT_COMMITTED);
+        accountRepository.depositBalance(group.getAccountNumber(), group.getAmount(), now);
+        accountListCacheService.evictAfterCommit(group.getClientUsername());
+        transactionMetrics.recordAfterCommit(TransactionStatus.ABORTED, group.getTransactionIds().size(),
+                                             group.getAmount());
+        return now;
+    }
+
+    @Transactional(readOnly = true)
     public CheckTransactionResponse checkTransaction(Long transactionId) {
-        Transaction transaction = transactionRepository.findById(transactionId)
-                   .orElseThrow(() -> new TransactionException(
-                                ErrorCode.TRANSACTION_NOT_FOUND));
-        return new CheckTransactionResponse(transaction.getId(),
-                                            transaction.getAccount().getAccountNumber(),
-                                            transaction.getTransactionStatus(),
-                                            transaction.getAmount(),
-                                            transaction.getCreatedAt());
+        List<Optional<CheckTransactionResponse>> shards = shardDirectory.callOnEachShard(
+            () -> transactionRepository.findCheckTransactionById(transactionId));
+        for (int shard = 0; shard < shards.size(); shard++) {
+            Optional<CheckTransactionResponse> transaction = shards.get(shard);
+            // a copy on a shard its account has been moved from or to is not the one to report
+            if (transaction.isPresent()
+                && (shards.size() == 1 || shardDirectory.shardOf(transaction.get().getAccountNumber()) == shard))
+                return transaction.get();
+        }
+        throw new TransactionException(
+            ErrorCode.TRANSACTION_NOT_FOUND);
+    }
+
+    /**
+     * Lists the account's transactions newest first, one page at a time.
+     * Pass the {@code nextCursor} of a page to get the one after it, with the same filters.
+     *
+     * @param from inclusive lower bound on the creation time, if any
+     * @param to exclusive upper bound on the creation time, if any
+     * @param size page size, capped at the configured maximum
+     */
+    public TransactionHistoryResponse getTransactionHistory(String accountNumber,
+                                                            TransactionStatus status,
+                                                            LocalDateTime from,
+                                                            LocalDateTime to,
+                                                            String cursor,
+                                                            Integer size) {
+        return shardDirectory.callOn(shardDirectory.shardOf(accountNumber),
+            () -> loadTransactionHistory(accountNumber, status, from, to, cursor, size));
+    }
+
+    private TransactionHistoryResponse loadTransactionHistory(String accountNumber,
+                                                              TransactionStatus status,
+                                                              LocalDateTime from,
+                                                              LocalDateTime to,
+                                                              String cursor,
+                                                              Integer size) {
+        Long accountId = accountRepository.findIdByAccountNumber(accountNumber)
+                   .orElseThrow(() -> new AccountException(
+                                ErrorCode.ACCOUNT_NOT_FOUND));
+        int pageSize = size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+        LocalDateTime before = to == null ? HISTORY_END : to;
+        long beforeId = Long.MIN_VALUE;
+        if (cursor != null) {
+            String[] key = decodeCursor(cursor);
+            before = LocalDateTime.parse(key[0]);
+            beforeId = Long.parseLong(key[1]);
+        }
+        // one extra row tells whether there is a page after this one
+        List<TransactionHistoryItem> transactions = transactionRepository.findHistoryPage(
+            accountId, status, from == null ? HISTORY_START : from, before, beforeId,
+            PageRequest.of(0, pageSize + 1));
+        String nextCursor = null;
+        if (transactions.size() > pageSize) {
+            transactions = transactions.subList(0, pageSize);
+            TransactionHistoryItem last = transactions.get(pageSize - 1);
+            nextCursor = encodeCursor(last.getCreatedAt(), last.getTransactionId());
+        }
+        return TransactionHistoryResponse.builder()
+                                         .accountNumber(accountNumber)
+                                         .transactions(transactions)
+                                         .nextCursor(nextCursor)
+                                         .build();
+    }
+
+    private static String encodeCursor(LocalDateTime createdAt, Long transactionId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            (createdAt + "_" + transactionId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_");
+            if (key.length != 2)
+                throw new IllegalArgumentException(cursor);
+            LocalDateTime.parse(key[0]);
+            Long.parseLong(key[1]);
+            return key;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new TransactionException(
+                ErrorCode.TRANSACTION_INVALID_CURSOR);
+        }
+    }
+
+    protected void validateSpend(Account account, SpendBalanceRequest request, long balance) {
+        if (account == null
+            || !account.getClient().getUsername().equals(request.getClientUsername())) {
+            // the client is looked up only to tell which of the two is wrong
+            accountService.getClientByUsername(request.getClientUsername());
+            if (account == null)
+                throw new AccountException(
+                    ErrorCode.ACCOUNT_NOT_FOUND);
+            throw new AccountException(
+                ErrorCode.ACCOUNT_OWNED_BY_OTHER_CLIENT);
+        }
+        if (account.getAccountStatus() == AccountStatus.CLOSED)
+            throw new AccountException(
+                ErrorCode.ACCOUNT_CLOSED);
+        if (balance < request.getAmount())
+            throw new TransactionException(
+                ErrorCode.TRANSACTION_INSUFFICIENT_FUNDS);
+        if (request.getAmount() < 100L)
+            throw new TransactionException(
+                ErrorCode.TRANSACTION_BELOW_MIN_THRESHOLD);
+        else if (request.getAmount() > 1_000_000_000L)
+            throw new TransactionException(
+                ErrorCode.TRANSACTION_EXCEEDS_MAX_THRESHOLD);
     }
 }
@@ -18,6 +18,14 @@ public enum ErrorCode {
     TRANSACTION_NOT_FOUND("There is no transaction with requested transaction id"),
     TRANSACTION_ACCOUNT_NOT_MATCHED("Transaction is made on another account"),
     TRANSACTION_INVALID_AMOUNT("Requested amount does not match the transaction record"),
-    TRANSACTION_NOT_COMMITTED("Transaction is not committed yet or aborted or rolled back");
+    TRANSACTION_NOT_COMMITTED("Transaction is not committed yet or aborted or rolled back"),
+    ACCOUNT_TRANSACTION_LOCK("Account is being used by another transaction, please try again later"),
+    TRANSACTION_BATCH_TOO_LARGE("Batch contains more requests than allowed"),
+    IDEMPOTENT_REQUEST_IN_PROGRESS("A request with the same Idempotency-Key is still being processed"),
+    ACCOUNT_NUMBER_EXHAUSTED("There is no account number left to allocate"),
+    TRANSACTION_INVALID_CURSOR("Cursor is malformed or was not issued by this server"),
+    ACCOUNT_WITH_PENDING_TRANSACTIONS("Account has transactions not written to the database yet, please try again later"),
+    ACCOUNT_SHARD_UNAVAILABLE("Client's shard does not take new accounts at the moment, please try again later"),
+    IDEMPOTENCY_KEY_REUSED("Idempotency-Key has already been used for a different request");
     private final String description;
 }
@@ -0,0 +1,47 @@
+create table client (
+    id              bigint generated by default as identity,
+    username        varchar(255),
+    active_accounts integer not null default 0,
+    created_at      timestamp(6),
+    primary key (id)
+);
+
+create table account (
+    id             bigint generated by default as identity,
+    account_number varchar(255),
+    account_status varchar(255),
+    balance        bigint,
+    closed_at      timestamp(6),
+    created_at     timestamp(6),
+    updated_at     timestamp(6),
+    version        bigint,
+    client_id      bigint,
+    primary key (id)
+);
+
+create table transaction (
+    id                 bigint generated by default as identity,
+    transaction_status varchar(255),
+    amount             bigint,
+    aborted_at         timestamp(6),
+    created_at         timestamp(6),
+    updated_at         timestamp(6),
+    version            bigint,
+    account_id         bigint,
+    primary key (id)
+);
+
+create unique index ux_client_username on client (username);
+
+-- findByAccountNumber and the guarded balance updates
+create unique index ux_account_account_number on account (account_number);
+-- open accounts of a client, covering the account list so it never reads the table
+create index ix_account_client_status on account (client_id, account_status, account_number, balance);
+-- transactions of an account in the order they were made, covering a page of the history
+create index ix_transaction_account_created
+    on transaction (account_id, created_at, id, transaction_status, amount, aborted_at);
+
+alter table account add constraint fk_account_client
+    foreign key (client_id) references client (id);
+alter table transaction add constraint fk_transaction_account
+    foreign key (account_id) references account (id);
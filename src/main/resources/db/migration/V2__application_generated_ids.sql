@@ -0,0 +1,4 @@
+-- ids are generated by SnowflakeIdGenerator so that inserts can be batched
+alter table client alter column id drop identity;
+alter table account alter column id drop identity;
+alter table transaction alter column id drop identity;
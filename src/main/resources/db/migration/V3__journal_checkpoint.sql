@@ -0,0 +1,6 @@
+-- sequence number of the last journal entry written to the database, per node
+create table journal_checkpoint (
+    node_id     integer not null,
+    applied_lsn bigint  not null,
+    primary key (node_id)
+);
@@ -0,0 +1,6 @@
+-- slots moved off their default shard by ShardRebalancer, only read on shard 0
+create table shard_slot (
+    slot  integer not null,
+    shard integer not null,
+    primary key (slot)
+);
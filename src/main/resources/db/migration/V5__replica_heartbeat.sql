@@ -0,0 +1,8 @@
+-- written on the primary by ReplicaLagMonitor, how old a replica's copy is tells how far behind it is
+create table replica_heartbeat (
+    id      integer not null,
+    beat_at bigint  not null,
+    primary key (id)
+);
+
+insert into replica_heartbeat (id, beat_at) values (1, 0);
@@ -0,0 +1,12 @@
+-- the journal a checkpoint was written from, compared with the journal directory on start
+alter table journal_checkpoint add column journal_id varchar(36);
+
+-- journal entries the database refused, moved aside so that the entries after them are written
+create table journal_quarantine (
+    node_id        integer       not null,
+    lsn            bigint        not null,
+    entry          varchar(4000) not null,
+    error          varchar(1000),
+    quarantined_at timestamp     not null,
+    primary key (node_id, lsn)
+);
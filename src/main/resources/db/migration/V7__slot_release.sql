@@ -0,0 +1,15 @@
+-- slots of closed accounts still to be given back to the client's counter on its home shard,
+-- written on the account's shard along with closing it
+create table pending_slot_release (
+    account_id      bigint       not null,
+    client_id       bigint       not null,
+    client_username varchar(255) not null,
+    created_at      timestamp    not null,
+    primary key (account_id)
+);
+
+-- closed accounts whose slot has been given back, on the client's home shard, so that a release counts once
+create table released_slot (
+    account_id bigint not null,
+    primary key (account_id)
+);
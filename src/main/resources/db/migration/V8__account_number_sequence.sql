@@ -0,0 +1,8 @@
+-- the first account sequence number not leased to a node yet, only used on shard 0
+create table account_number_sequence (
+    id         integer not null,
+    next_value bigint  not null,
+    primary key (id)
+);
+
+insert into account_number_sequence (id, next_value) values (1, 0);
@@ -0,0 +1,91 @@
+package dev.hanjoon.accountmanager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.PropertiesMeterFilter;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.service.AccountService;
+import dev.hanjoon.accountmanager.service.TransactionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+
+@SpringBootTest
+public class MetricsTest {
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private PropertiesMeterFilter propertiesMeterFilter;
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    @DisplayName("Service calls, rejections, amounts, queries and pools are measured")
+    public void metricsTest() throws Exception {
+        String clientUsername = "metricsTestClient";
+        clientRepository.save(Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 1_000L)).getAccountNumber();
+        double committed = amount("committed");
+        double aborted = amount("aborted");
+        Long transactionId = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 300L)).getTransactionId();
+        transactionService.abortTransaction(new AbortTransactionRequest(transactionId, accountNumber, 300L));
+        Assertions.assertEquals(committed + 300, amount("committed"));
+        Assertions.assertEquals(aborted + 300, amount("aborted"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/transaction/spend/batch")
+                                              .contentType("application/json")
+                                              .content("[{\"clientUsername\":\"" + clientUsername
+                                                       + "\", \"accountNumber\":\"" + accountNumber
+                                                       + "\", \"amount\":5000}]"))
+               .andExpect(MockMvcResultMatchers.status().isOk());
+        Assertions.assertEquals(1.0, meterRegistry.get("requests.rejected")
+                                                  .tag("code", "TRANSACTION_INSUFFICIENT_FUNDS")
+                                                  .counter().count());
+
+        // exporters are off in tests, so the histograms Prometheus would get are checked on their config
+        Assertions.assertTrue(histogram("service.calls"));
+        Assertions.assertTrue(histogram("spring.data.repository.invocations"));
+        Assertions.assertTrue(histogram("http.server.serialization"));
+        Assertions.assertNotNull(meterRegistry.find("hikaricp.connections.active").gauge());
+    }
+
+    private boolean histogram(String name) {
+        Timer timer = meterRegistry.get(name).timer();
+        DistributionStatisticConfig config = propertiesMeterFilter.configure(timer.getId(),
+                                                                             DistributionStatisticConfig.NONE);
+        return Boolean.TRUE.equals(config.isPercentileHistogram());
+    }
+
+    private double amount(String status) {
+        return meterRegistry.get("transactions.amount").tag("status", status).counter().count();
+    }
+}
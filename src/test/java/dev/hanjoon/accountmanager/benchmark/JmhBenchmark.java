@@ -0,0 +1,125 @@
+package dev.hanjoon.accountmanager.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks in {@code benchmark.jmh} with the allocation profiler and prints every score next to
+ * the one in src/test/resources/benchmark/jmh-baseline.properties, recorded along with the machine it ran on.
+ * The service benchmarks boot their own application in a forked JVM each.
+ * Run with {@code mvn test -P benchmark -Dtest=JmhBenchmark}, pick benchmarks with a regex in
+ * -Dbenchmark.jmh.include, fork another JVM than the one running Maven by its java executable in -Dbenchmark.jvm
+ * and record the scores as the new baseline with -Dbenchmark.record=true.
+ * The full results are written to target/jmh-result.json.
+ */
+@Tag("benchmark")
+public class JmhBenchmark {
+    private static final Path BASELINE = Path.of("src/test/resources/benchmark/jmh-baseline.properties");
+    private static final String INCLUDE = System.getProperty("benchmark.jmh.include",
+                                                             JmhBenchmark.class.getPackageName() + ".jmh.");
+    private static final String JVM = System.getProperty("benchmark.jvm");
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    @Test
+    public void hotPaths() throws Exception {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (JVM != null)
+            builder.jvm(JVM);
+        Options options = builder.include(INCLUDE)
+                                 .addProfiler(GCProfiler.class)
+                                 .resultFormat(ResultFormatType.JSON)
+                                 .result("target/jmh-result.json")
+                                 .build();
+        Collection<RunResult> results = new Runner(options).run();
+        Assertions.assertFalse(results.isEmpty());
+
+        Map<String, Double> scores = new TreeMap<>();
+        Map<String, String> units = new TreeMap<>();
+        for (RunResult run : results) {
+            String benchmark = run.getParams().getBenchmark();
+            String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1)
+                          + "." + run.getParams().getMode().shortLabel();
+            Result<?> primary = run.getPrimaryResult();
+            scores.put(name, primary.getScore());
+            units.put(name, primary.getScoreUnit());
+            if (run.getParams().getMode() == Mode.SampleTime) {
+                scores.put(name + ".p99", primary.getStatistics().getPercentile(99));
+                units.put(name + ".p99", primary.getScoreUnit());
+            }
+            for (Map.Entry<String, Result> secondary : run.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith(ALLOCATION)) {
+                    scores.put(name + "." + ALLOCATION, secondary.getValue().getScore());
+                    units.put(name + "." + ALLOCATION, secondary.getValue().getScoreUnit());
+                }
+            }
+        }
+
+        Properties baseline = loadBaseline();
+        System.out.printf("%n%-70s %14s %14s %8s%n", "benchmark", "baseline", "score", "change");
+        for (Map.Entry<String, Double> score : scores.entrySet()) {
+            String recorded = baseline.getProperty(score.getKey());
+            if (recorded == null) {
+                System.out.printf("%-70s %14s %14.4g %8s %s%n", score.getKey(), "-", score.getValue(), "",
+                                  units.get(score.getKey()));
+                continue;
+            }
+            double before = Double.parseDouble(recorded);
+            System.out.printf("%-70s %14.4g %14.4g %+7.1f%% %s%n", score.getKey(), before, score.getValue(),
+                              (score.getValue() - before) / before * 100, units.get(score.getKey()));
+        }
+
+        if (Boolean.getBoolean("benchmark.record"))
+            record(baseline, scores, results.iterator().next().getParams());
+    }
+
+    private static Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        if (Files.exists(BASELINE)) {
+            try (Reader reader = Files.newBufferedReader(BASELINE)) {
+                baseline.load(reader);
+            }
+        }
+        return baseline;
+    }
+
+    // benchmarks left out of this run keep their recorded scores
+    private static void record(Properties baseline, Map<String, Double> scores, BenchmarkParams forked)
+            throws IOException {
+        Map<String, String> recorded = new TreeMap<>();
+        for (String name : baseline.stringPropertyNames())
+            recorded.put(name, baseline.getProperty(name));
+        for (Map.Entry<String, Double> score : scores.entrySet())
+            recorded.put(score.getKey(), String.format(Locale.ROOT, "%.4g", score.getValue()));
+        List<String> lines = new ArrayList<>();
+        // the JVM the benchmarks were forked on, which may not be the one running Maven
+        lines.add(String.format("# %s %s on %s, %d cpus", forked.getVmName(), forked.getVmVersion(),
+                                System.getProperty("os.name"),
+                                Runtime.getRuntime().availableProcessors()));
+        for (Map.Entry<String, String> score : recorded.entrySet())
+            lines.add(score.getKey() + "=" + score.getValue());
+        Files.createDirectories(BASELINE.getParent());
+        Files.write(BASELINE, lines);
+    }
+}
@@ -0,0 +1,342 @@
+package dev.hanjoon.accountmanager.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.service.AccountService;
+import dev.hanjoon.accountmanager.service.PendingBalanceChanges;
+
+/**
+ * Drives every endpoint with a mix of requests from many concurrent clients, prints throughput and latency
+ * per endpoint, and then checks that no spend or abort has been lost or applied twice: every account holds
+ * its initial balance less its committed spends, both as the responses told and as the transactions say.
+ * Run with {@code mvn test -P benchmark -Dtest=LoadBenchmark}, and tune with -Dbenchmark.concurrency,
+ * -Dbenchmark.requests, -Dbenchmark.load.mix (weights, spend:50,abort:10,list:20,check:10,create:5,close:5),
+ * -Dbenchmark.load.hot-accounts and -Dbenchmark.load.hot-share (the share of requests going to the hot accounts).
+ * Any other account-manager property can be given too, such as -Daccount-manager.transaction.mode=journal.
+ */
+@Tag("benchmark")
+// the SQL and transaction debug logs of the regular profile would be most of what gets measured
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {"spring.redis.port=6391",
+                              "spring.datasource.url=jdbc:h2:mem:load",
+                              "account-manager.journal.dir=target/load-journal",
+                              "logging.level.org.hibernate=WARN",
+                              "logging.level.org.hibernate.SQL=WARN",
+                              "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                              "logging.level.org.hibernate.resource.transaction=WARN",
+                              "logging.level.org.springframework.transaction.interceptor=WARN",
+                              "logging.level.org.springframework.orm.jpa.JpaTransactionManager=WARN",
+                              "logging.level.org.springframework.jdbc.datasource.DataSourceTransactionManager=WARN"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class LoadBenchmark {
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 100);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 20_000);
+    private static final String MIX = System.getProperty("benchmark.load.mix",
+                                                         "spend:50,abort:10,list:20,check:10,create:5,close:5");
+    private static final int HOT_ACCOUNTS = Integer.getInteger("benchmark.load.hot-accounts", 4);
+    private static final double HOT_SHARE = Double.parseDouble(System.getProperty("benchmark.load.hot-share", "0.5"));
+    private static final int CLIENTS = 40;
+    private static final int ACCOUNTS_PER_CLIENT = 10;
+    private static final long INITIAL_BALANCE = 1_000_000_000L;
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+    private enum Request { SPEND, ABORT, LIST, CHECK, CREATE, CLOSE }
+
+    private record Spend(long transactionId, int account, long amount) {}
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectProvider<PendingBalanceChanges> pendingBalanceChanges;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+                                                    .version(HttpClient.Version.HTTP_1_1)
+                                                    .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<String> clientUsernames = new ArrayList<>();
+    private final List<String> accountNumbers = new ArrayList<>();
+    private final Map<String, Long> initialBalances = new ConcurrentHashMap<>();
+    private AtomicLongArray spent;
+    private AtomicLongArray aborted;
+    private final List<Spend> spends = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentLinkedQueue<Spend> abortable = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String[]> closable = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger creates = new AtomicInteger();
+    private Request[] schedule;
+
+    @Test
+    public void mixedLoadKeepsBalances() throws Exception {
+        schedule = schedule();
+        for (int c = 0; c < CLIENTS; c++) {
+            String clientUsername = "load" + c;
+            clientRepository.save(Client.builder().username(clientUsername).build());
+            clientUsernames.add(clientUsername);
+            for (int a = 0; a < ACCOUNTS_PER_CLIENT; a++) {
+                String accountNumber = accountService.createAccount(
+                    new CreateAccountRequest(clientUsername, INITIAL_BALANCE)).getAccountNumber();
+                accountNumbers.add(accountNumber);
+                initialBalances.put(accountNumber, INITIAL_BALANCE);
+            }
+        }
+        spent = new AtomicLongArray(accountNumbers.size());
+        aborted = new AtomicLongArray(accountNumbers.size());
+        // creates never reach the account limit: every creating client gets exactly as many as it may hold
+        int warmUp = REQUESTS / 10;
+        for (int c = 0; c * ACCOUNTS_PER_CLIENT < creates(warmUp) + creates(REQUESTS); c++)
+            clientRepository.save(Client.builder().username("loadCreator" + c).build());
+
+        run(warmUp, new Request[warmUp], new long[warmUp], new int[warmUp]);
+        Request[] sent = new Request[REQUESTS];
+        long[] latencies = new long[REQUESTS];
+        int[] statuses = new int[REQUESTS];
+        long started = System.nanoTime();
+        run(REQUESTS, sent, latencies, statuses);
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        System.out.printf("%n[load] %d requests from %d clients in %.2f s: %.0f req/s, %d hot accounts get %.0f%%%n",
+                          REQUESTS, CONCURRENCY, seconds, REQUESTS / seconds, HOT_ACCOUNTS, HOT_SHARE * 100);
+        for (Request request : Request.values())
+            report(request, sent, latencies, statuses);
+
+        awaitPendingChanges();
+        checkBalances();
+    }
+
+    /**
+     * Requests in the proportions of the mix, spread evenly over the run.
+     */
+    private static Request[] schedule() {
+        List<Request> schedule = new ArrayList<>();
+        for (String weight : MIX.split(",")) {
+            String[] parts = weight.trim().split(":");
+            Request request = Request.valueOf(parts[0].trim().toUpperCase());
+            for (int i = Integer.parseInt(parts[1].trim()); i > 0; i--)
+                schedule.add(request);
+        }
+        Collections.shuffle(schedule, new Random(20220801));
+        return schedule.toArray(new Request[0]);
+    }
+
+    private int creates(int requests) {
+        int creates = 0;
+        for (int i = 0; i < requests; i++)
+            if (schedule[i % schedule.length] == Request.CREATE)
+                creates++;
+        return creates;
+    }
+
+    private void run(int requests, Request[] sent, long[] latencies, int[] statuses) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < CONCURRENCY; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    long startedAt = System.nanoTime();
+                    sent[i] = send(schedule[i % schedule.length], statuses, i);
+                    latencies[i] = System.nanoTime() - startedAt;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+    }
+
+    /**
+     * Aborts, checks and closes are sent as spends until there is something for them to work on.
+     *
+     * @return the request actually sent
+     */
+    private Request send(Request request, int[] statuses, int i) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (request) {
+            case ABORT -> {
+                Spend spend = abortable.poll();
+                if (spend == null)
+                    return send(Request.SPEND, statuses, i);
+                HttpResponse<String> response = post("/api/transaction/abort",
+                    "{\"transactionId\":" + spend.transactionId() + ",\"accountNumber\":\""
+                    + accountNumbers.get(spend.account()) + "\",\"amount\":" + spend.amount() + "}");
+                if ((statuses[i] = response.statusCode()) == 200)
+                    aborted.addAndGet(spend.account(), spend.amount());
+            }
+            case LIST -> {
+                String clientUsername = clientUsernames.get(account(random) / ACCOUNTS_PER_CLIENT);
+                statuses[i] = get("/api/account/" + clientUsername).statusCode();
+            }
+            case CHECK -> {
+                Spend spend;
+                synchronized (spends) {
+                    spend = spends.isEmpty() ? null : spends.get(random.nextInt(spends.size()));
+                }
+                if (spend == null)
+                    return send(Request.SPEND, statuses, i);
+                statuses[i] = get("/api/transaction/" + spend.transactionId()).statusCode();
+            }
+            case CREATE -> {
+                String clientUsername = "loadCreator" + creates.getAndIncrement() / ACCOUNTS_PER_CLIENT;
+                HttpResponse<String> response = post("/api/account",
+                    "{\"clientUsername\":\"" + clientUsername + "\",\"initialBalance\":0}");
+                if ((statuses[i] = response.statusCode()) == 200) {
+                    String accountNumber = objectMapper.readTree(response.body()).get("accountNumber").asText();
+                    initialBalances.put(accountNumber, 0L);
+                    closable.add(new String[] {clientUsername, accountNumber});
+                }
+            }
+            case CLOSE -> {
+                String[] account = closable.poll();
+                if (account == null)
+                    return send(Request.SPEND, statuses, i);
+                statuses[i] = send(HttpRequest.newBuilder(uri("/api/account"))
+                                              .header("Content-Type", "application/json")
+                                              .method("DELETE", HttpRequest.BodyPublishers.ofString(
+                                                  "{\"clientUsername\":\"" + account[0]
+                                                  + "\",\"accountNumber\":\"" + account[1] + "\"}"))
+                                              .build()).statusCode();
+            }
+            case SPEND -> {
+                int account = account(random);
+                long amount = 100 + random.nextInt(10_000);
+                HttpResponse<String> response = post("/api/transaction/spend",
+                    "{\"clientUsername\":\"" + clientUsernames.get(account / ACCOUNTS_PER_CLIENT)
+                    + "\",\"accountNumber\":\"" + accountNumbers.get(account) + "\",\"amount\":" + amount + "}");
+                if ((statuses[i] = response.statusCode()) == 200) {
+                    JsonNode body = objectMapper.readTree(response.body());
+                    Spend spend = new Spend(body.get("transactionId").asLong(), account, amount);
+                    spent.addAndGet(account, amount);
+                    spends.add(spend);
+                    abortable.add(spend);
+                }
+            }
+        }
+        return request;
+    }
+
+    // the first accounts are hot, taking their share of the requests between them
+    private int account(ThreadLocalRandom random) {
+        if (random.nextDouble() < HOT_SHARE)
+            return random.nextInt(HOT_ACCOUNTS);
+        return random.nextInt(accountNumbers.size());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return send(HttpRequest.newBuilder(uri(path))
+                               .header("Content-Type", "application/json")
+                               .POST(HttpRequest.BodyPublishers.ofString(body))
+                               .build());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return send(HttpRequest.newBuilder(uri(path)).GET().build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private void report(Request request, Request[] sent, long[] latencies, int[] statuses) {
+        List<Long> taken = new ArrayList<>();
+        Map<Integer, Integer> failures = new HashMap<>();
+        for (int i = 0; i < sent.length; i++) {
+            if (sent[i] != request)
+                continue;
+            taken.add(latencies[i]);
+            if (statuses[i] != 200)
+                failures.merge(statuses[i], 1, Integer::sum);
+        }
+        if (taken.isEmpty())
+            return;
+        Collections.sort(taken);
+        System.out.printf("[load] %-6s %6d sent, p50 %6.1f ms, p99 %6.1f ms, max %6.1f ms, failed %s%n",
+                          request.name().toLowerCase(), taken.size(),
+                          taken.get(taken.size() / 2) / 1e6,
+                          taken.get((int) (taken.size() * 0.99)) / 1e6,
+                          taken.get(taken.size() - 1) / 1e6,
+                          failures.isEmpty() ? "none" : failures);
+    }
+
+    // the asynchronous transaction modes answer before the balances are written
+    private void awaitPendingChanges() throws InterruptedException {
+        PendingBalanceChanges pending = pendingBalanceChanges.getIfAvailable();
+        if (pending == null)
+            return;
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        for (String accountNumber : initialBalances.keySet()) {
+            while (pending.hasPendingChanges(accountNumber)) {
+                Assertions.assertTrue(System.currentTimeMillis() < deadline,
+                                      accountNumber + " still has pending changes");
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private void checkBalances() {
+        Map<String, long[]> stored = new HashMap<>();
+        jdbcTemplate.query(
+            "select a.account_number, a.balance,"
+            + " coalesce(sum(case when t.transaction_status = 'COMMITTED' then t.amount end), 0) as committed"
+            + " from account a left join transaction t on t.account_id = a.id"
+            + " group by a.account_number, a.balance",
+            row -> {
+                stored.put(row.getString(1), new long[] {row.getLong(2), row.getLong(3)});
+            });
+        for (Map.Entry<String, Long> initial : initialBalances.entrySet()) {
+            long[] account = stored.get(initial.getKey());
+            Assertions.assertNotNull(account, initial.getKey());
+            Assertions.assertEquals(initial.getValue() - account[1], account[0],
+                                    initial.getKey() + " does not match its committed transactions");
+        }
+        for (int a = 0; a < accountNumbers.size(); a++) {
+            Assertions.assertEquals(INITIAL_BALANCE - spent.get(a) + aborted.get(a),
+                                    stored.get(accountNumbers.get(a))[0],
+                                    accountNumbers.get(a) + " does not match the responses");
+        }
+        System.out.printf("[load] balances of %d accounts match their committed spends%n", initialBalances.size());
+    }
+}
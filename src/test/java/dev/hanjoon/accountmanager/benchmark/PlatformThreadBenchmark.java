@@ -0,0 +1,11 @@
+package dev.hanjoon.accountmanager.benchmark;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "account-manager.threads.virtual=false")
+public class PlatformThreadBenchmark extends ThreadModeBenchmark {
+    @Override
+    protected String mode() {
+        return "platform";
+    }
+}
@@ -0,0 +1,138 @@
+package dev.hanjoon.accountmanager.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.service.AccountService;
+
+/**
+ * Drives the spend and list endpoints from many concurrent clients and prints throughput and latency.
+ * Subclasses pick the thread mode; each one gets its own server, shut down before the next one starts.
+ * Run with {@code mvn test -P benchmark}, and tune with -Dbenchmark.concurrency and -Dbenchmark.requests.
+ */
+@Tag("benchmark")
+// the SQL and transaction debug logs of the regular profile would be most of what gets measured
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {"logging.level.org.hibernate=WARN",
+                              "logging.level.org.hibernate.SQL=WARN",
+                              "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                              "logging.level.org.hibernate.resource.transaction=WARN",
+                              "logging.level.org.springframework.transaction.interceptor=WARN",
+                              "logging.level.org.springframework.orm.jpa.JpaTransactionManager=WARN",
+                              "logging.level.org.springframework.jdbc.datasource.DataSourceTransactionManager=WARN"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public abstract class ThreadModeBenchmark {
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 400);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 20_000);
+    private static final int CLIENTS = 40;
+    private static final int ACCOUNTS_PER_CLIENT = 10;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountService accountService;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+                                                    .version(HttpClient.Version.HTTP_1_1)
+                                                    .build();
+
+    protected abstract String mode();
+
+    @Test
+    public void spendAndListUnderLoad() throws Exception {
+        String prefix = "benchmark" + mode();
+        List<String[]> accounts = new ArrayList<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            String clientUsername = prefix + c;
+            clientRepository.save(Client.builder().username(clientUsername).build());
+            for (int a = 0; a < ACCOUNTS_PER_CLIENT; a++)
+                accounts.add(new String[] {clientUsername, accountService.createAccount(
+                    new CreateAccountRequest(clientUsername, 1_000_000_000L)).getAccountNumber()});
+        }
+
+        run(accounts, REQUESTS / 10); // warm up
+        long[] spend = new long[REQUESTS / 2];
+        long[] list = new long[REQUESTS / 2];
+        long started = System.nanoTime();
+        int failures = run(accounts, REQUESTS, spend, list);
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        System.out.printf("%n[%s threads] %d requests from %d clients in %.2f s: %.0f req/s, %d failed%n",
+                          mode(), REQUESTS, CONCURRENCY, seconds, REQUESTS / seconds, failures);
+        report("spend", spend);
+        report("list", list);
+        Assertions.assertEquals(0, failures);
+    }
+
+    private int run(List<String[]> accounts, int requests) throws Exception {
+        return run(accounts, requests, new long[requests], new long[requests]);
+    }
+
+    // even requests spend and odd ones list, spread over the accounts so that they rarely share a lock
+    private int run(List<String[]> accounts, int requests, long[] spend, long[] list) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < CONCURRENCY; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                    String[] account = accounts.get((i / 2) % accounts.size());
+                    HttpRequest request = i % 2 == 0
+                        ? HttpRequest.newBuilder(uri("/api/transaction/spend"))
+                                     .header("Content-Type", "application/json")
+                                     .POST(HttpRequest.BodyPublishers.ofString(
+                                         "{\"clientUsername\":\"" + account[0] + "\",\"accountNumber\":\""
+                                         + account[1] + "\",\"amount\":100}"))
+                                     .build()
+                        : HttpRequest.newBuilder(uri("/api/account/" + account[0])).GET().build();
+                    long sent = System.nanoTime();
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    (i % 2 == 0 ? spend : list)[i / 2] = System.nanoTime() - sent;
+                    if (response.statusCode() != 200)
+                        failures.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        return failures.get();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private void report(String endpoint, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("[%s threads] %-5s p50 %6.1f ms, p99 %6.1f ms, max %6.1f ms%n", mode(), endpoint,
+                          sorted[sorted.length / 2] / 1e6,
+                          sorted[(int) (sorted.length * 0.99)] / 1e6,
+                          sorted[sorted.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,13 @@
+package dev.hanjoon.accountmanager.benchmark;
+
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.test.context.TestPropertySource;
+
+@EnabledIf("dev.hanjoon.accountmanager.config.VirtualThreads#isSupported")
+@TestPropertySource(properties = "account-manager.threads.virtual=true")
+public class VirtualThreadBenchmark extends ThreadModeBenchmark {
+    @Override
+    protected String mode() {
+        return "virtual";
+    }
+}
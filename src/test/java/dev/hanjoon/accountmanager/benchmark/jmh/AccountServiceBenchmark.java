@@ -0,0 +1,78 @@
+package dev.hanjoon.accountmanager.benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.CreateAccountResponse;
+import dev.hanjoon.accountmanager.dto.ListAccountResponse;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountServiceBenchmark {
+    /**
+     * A client with room for one more account, made outside of the measurement once the last one is full.
+     */
+    @State(Scope.Thread)
+    public static class NewClient {
+        private String prefix;
+        private int clients;
+        private int accounts = SeededApplication.ACCOUNTS_PER_CLIENT;
+        private String clientUsername;
+
+        @Setup(Level.Trial)
+        public void name(ThreadParams threadParams) {
+            prefix = "jmhNewClient" + threadParams.getThreadIndex() + "_";
+        }
+
+        @Setup(Level.Invocation)
+        public void makeRoom(SeededApplication application) {
+            if (accounts++ < SeededApplication.ACCOUNTS_PER_CLIENT)
+                return;
+            clientUsername = application.newClient(prefix + clients++);
+            accounts = 1;
+        }
+    }
+
+    /**
+     * The next client to list, with its account list evicted outside of the measurement so the list is loaded
+     * from the database every time.
+     */
+    @State(Scope.Thread)
+    public static class UncachedClient {
+        private int next;
+        private String clientUsername;
+
+        @Setup(Level.Invocation)
+        public void evict(SeededApplication application) {
+            clientUsername = application.clientUsername(next++);
+            application.evictAccountList(clientUsername);
+        }
+    }
+
+    @Benchmark
+    public CreateAccountResponse createAccount(SeededApplication application, NewClient newClient) {
+        return application.accountService().createAccount(
+            new CreateAccountRequest(newClient.clientUsername, SeededApplication.INITIAL_BALANCE));
+    }
+
+    @Benchmark
+    public ListAccountResponse listAccount(SeededApplication application, UncachedClient client) {
+        return application.accountService().listAccount(client.clientUsername);
+    }
+}
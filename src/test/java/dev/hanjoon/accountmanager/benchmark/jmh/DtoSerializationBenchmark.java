@@ -0,0 +1,82 @@
+package dev.hanjoon.accountmanager.benchmark.jmh;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.AccountNumberAndBalance;
+import dev.hanjoon.accountmanager.dto.CheckTransactionResponse;
+import dev.hanjoon.accountmanager.dto.ListAccountResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+
+/**
+ * Writes the response bodies of the hot endpoints with the ObjectMapper {@code @EnableWebMvc} gives
+ * its JSON converter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoSerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private SpendBalanceResponse spendBalanceResponse;
+    private AbortTransactionResponse abortTransactionResponse;
+    private CheckTransactionResponse checkTransactionResponse;
+    private ListAccountResponse listAccountResponse;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        LocalDateTime now = LocalDateTime.now();
+        spendBalanceResponse = new SpendBalanceResponse("1000000000", TransactionStatus.COMMITTED,
+                                                        1L << 40, 5001L, now);
+        abortTransactionResponse = new AbortTransactionResponse("1000000000", TransactionStatus.ABORTED,
+                                                                1L << 40, 5001L, now);
+        checkTransactionResponse = new CheckTransactionResponse(1L << 40, "1000000000",
+                                                                TransactionStatus.COMMITTED, 5001L, now);
+        List<AccountNumberAndBalance> accounts = new ArrayList<>();
+        for (int a = 0; a < SeededApplication.ACCOUNTS_PER_CLIENT; a++)
+            accounts.add(new AccountNumberAndBalance(String.valueOf(1_000_000_000L + a), 1_000_000L * a));
+        listAccountResponse = new ListAccountResponse("clientWithTenAccount", accounts);
+    }
+
+    @Benchmark
+    public byte[] spendBalanceResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(spendBalanceResponse);
+    }
+
+    @Benchmark
+    public byte[] abortTransactionResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(abortTransactionResponse);
+    }
+
+    @Benchmark
+    public byte[] checkTransactionResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(checkTransactionResponse);
+    }
+
+    @Benchmark
+    public byte[] listAccountResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(listAccountResponse);
+    }
+}
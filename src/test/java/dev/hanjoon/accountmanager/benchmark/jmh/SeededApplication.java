@@ -0,0 +1,99 @@
+package dev.hanjoon.accountmanager.benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import dev.hanjoon.accountmanager.AccountManagerApp;
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.service.AccountListCacheService;
+import dev.hanjoon.accountmanager.service.AccountService;
+import dev.hanjoon.accountmanager.service.TransactionService;
+
+/**
+ * The application on its own in-memory H2 and embedded Redis, with clients that have every account they may open.
+ * One is started per fork and shared by the benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class SeededApplication {
+    public static final int CLIENTS = 100;
+    public static final int ACCOUNTS_PER_CLIENT = 10;
+    public static final long INITIAL_BALANCE = 1_000_000_000_000L;
+
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+    private TransactionService transactionService;
+    private final List<String> clientUsernames = new ArrayList<>();
+    private final List<String> accountNumbers = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void start() {
+        // the SQL and transaction debug logs of the regular profile would be most of what gets measured,
+        // and arguments win over application.yml
+        context = new SpringApplicationBuilder(AccountManagerApp.class).run(
+            "--server.port=0",
+            "--spring.redis.port=6390",
+            "--spring.datasource.url=jdbc:h2:mem:jmh",
+            "--logging.file.name=",
+            "--logging.level.root=WARN",
+            "--logging.level.org.hibernate=WARN",
+            "--logging.level.org.hibernate.SQL=WARN",
+            "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+            "--logging.level.org.hibernate.resource.transaction=WARN",
+            "--logging.level.org.springframework.transaction.interceptor=WARN",
+            "--logging.level.org.springframework.orm.jpa.JpaTransactionManager=WARN",
+            "--logging.level.org.springframework.jdbc.datasource.DataSourceTransactionManager=WARN");
+        accountService = context.getBean(AccountService.class);
+        transactionService = context.getBean(TransactionService.class);
+        for (int c = 0; c < CLIENTS; c++) {
+            String clientUsername = newClient("jmhClient" + c);
+            for (int a = 0; a < ACCOUNTS_PER_CLIENT; a++)
+                accountNumbers.add(accountService.createAccount(
+                    new CreateAccountRequest(clientUsername, INITIAL_BALANCE)).getAccountNumber());
+            clientUsernames.add(clientUsername);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public String newClient(String clientUsername) {
+        context.getBean(ClientRepository.class).save(Client.builder().username(clientUsername).build());
+        return clientUsername;
+    }
+
+    public void evictAccountList(String clientUsername) {
+        context.getBean(AccountListCacheService.class).evictAfterCommit(clientUsername);
+    }
+
+    public AccountService accountService() {
+        return accountService;
+    }
+
+    public TransactionService transactionService() {
+        return transactionService;
+    }
+
+    public String clientUsername(int i) {
+        return clientUsernames.get(Math.floorMod(i, clientUsernames.size()));
+    }
+
+    public String accountNumber(int i) {
+        return accountNumbers.get(Math.floorMod(i, accountNumbers.size()));
+    }
+
+    public String ownerOfAccount(int i) {
+        return clientUsernames.get(Math.floorMod(i, accountNumbers.size()) / ACCOUNTS_PER_CLIENT);
+    }
+}
@@ -0,0 +1,71 @@
+package dev.hanjoon.accountmanager.benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AbortTransactionResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionServiceBenchmark {
+    private static final long AMOUNT = 100L;
+
+    @State(Scope.Thread)
+    public static class Accounts {
+        private int next;
+
+        int next() {
+            return next++;
+        }
+    }
+
+    /**
+     * A fresh spend for every abort, made outside of the measurement.
+     */
+    @State(Scope.Thread)
+    public static class Spent {
+        private int next;
+        private AbortTransactionRequest request;
+
+        @Setup(Level.Invocation)
+        public void spend(SeededApplication application) {
+            int account = next++;
+            SpendBalanceResponse spent = application.transactionService().spendBalance(
+                new SpendBalanceRequest(application.ownerOfAccount(account),
+                                        application.accountNumber(account),
+                                        AMOUNT));
+            request = new AbortTransactionRequest(spent.getTransactionId(), spent.getAccountNumber(), AMOUNT);
+        }
+    }
+
+    @Benchmark
+    public SpendBalanceResponse spendBalance(SeededApplication application, Accounts accounts) {
+        int account = accounts.next();
+        return application.transactionService().spendBalance(
+            new SpendBalanceRequest(application.ownerOfAccount(account),
+                                    application.accountNumber(account),
+                                    AMOUNT));
+    }
+
+    @Benchmark
+    public AbortTransactionResponse abortTransaction(SeededApplication application, Spent spent) {
+        return application.transactionService().abortTransaction(spent.request);
+    }
+}
@@ -0,0 +1,107 @@
+package dev.hanjoon.accountmanager.config;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.service.AccountService;
+import dev.hanjoon.accountmanager.service.TransactionService;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+/**
+ * Runs in a context of its own with a replica fed by the stand-in, on its own Redis port and databases.
+ */
+@SpringBootTest(properties = {
+    "spring.redis.port=6381",
+    "spring.datasource.url=jdbc:h2:mem:primary",
+    "account-manager.replica.enabled=true",
+    "account-manager.replica.urls=jdbc:h2:mem:replica",
+    "account-manager.replica.max-lag-ms=1000",
+    "account-manager.replica.heartbeat-interval-ms=20",
+    "account-manager.replica.stand-in.enabled=true",
+    "account-manager.replica.stand-in.interval-ms=20"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ReplicaRoutingTest {
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+    @Autowired
+    private ReplicationStandIn replicationStandIn;
+
+    @Test
+    @DisplayName("Reads go to the replica while it is within the tolerated lag and to the primary after")
+    public void lagToleranceTest() throws Exception {
+        String clientUsername = "replicaTestClient";
+        clientRepository.save(Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 1_000L)).getAccountNumber();
+        Long replicated = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 100L)).getTransactionId();
+        JdbcTemplate replica = new JdbcTemplate(replicaRoutingDataSource.getReplicas().get(0));
+        await(() -> replicaRoutingDataSource.getLagMs(0) <= 1000L
+                    && replica.queryForObject("select count(*) from transaction where id = ?",
+                                              Long.class, replicated) == 1L);
+
+        replicationStandIn.stop();
+        Long notReplicated = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 100L)).getTransactionId();
+        // the replica is still within the tolerated lag, so it serves the reads without the latest spend
+        Assertions.assertEquals(replicated, transactionService.checkTransaction(replicated).getTransactionId());
+        TransactionException e = Assertions.assertThrows(TransactionException.class,
+            () -> transactionService.checkTransaction(notReplicated));
+        Assertions.assertEquals(ErrorCode.TRANSACTION_NOT_FOUND, e.getErrorCode());
+        // except for the cached account list, which is loaded from the primary to be fresh after every commit
+        Assertions.assertEquals(800L,
+            accountService.listAccount(clientUsername).getAccounts().get(0).getBalance());
+
+        await(() -> replicaRoutingDataSource.getLagMs(0) > 1000L);
+        Assertions.assertEquals(notReplicated, transactionService.checkTransaction(notReplicated).getTransactionId());
+    }
+
+    @Test
+    @DisplayName("Connections asked for with credentials are routed like the others")
+    public void credentialedConnectionTest() throws Exception {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(
+            new DriverManagerDataSource("jdbc:h2:mem:primary"),
+            List.of(new DriverManagerDataSource("jdbc:h2:mem:replica")), 1000L);
+        dataSource.setLagMs(0, 0L);
+        try (Connection connection = dataSource.getConnection("sa", "")) {
+            Assertions.assertEquals("jdbc:h2:mem:primary", connection.getMetaData().getURL());
+        }
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try (Connection connection = dataSource.getConnection("sa", "")) {
+            Assertions.assertEquals("jdbc:h2:mem:replica", connection.getMetaData().getURL());
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
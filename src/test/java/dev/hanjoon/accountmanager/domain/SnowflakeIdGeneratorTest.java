@@ -0,0 +1,32 @@
+package dev.hanjoon.accountmanager.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SnowflakeIdGeneratorTest {
+    @Test
+    @DisplayName("Ids increase within a millisecond and across the sequence running out")
+    public void idsIncreaseTest() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        long now = SnowflakeIdGenerator.EPOCH + 1_000L;
+        long previous = generator.nextId(now);
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId(now);
+            Assertions.assertTrue(id > previous);
+            previous = id;
+        }
+        // 10,000 ids do not fit in one millisecond, so the timestamp has moved on
+        Assertions.assertTrue(previous >>> (SnowflakeIdGenerator.NODE_BITS + SnowflakeIdGenerator.SEQUENCE_BITS) > 1_000L);
+    }
+
+    @Test
+    @DisplayName("Ids keep increasing when the clock goes backwards")
+    public void clockGoingBackwardsTest() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+        long now = SnowflakeIdGenerator.EPOCH + 1_000L;
+        long first = generator.nextId(now);
+        Assertions.assertTrue(generator.nextId(now - 500L) > first);
+        Assertions.assertTrue(generator.nextId(now + 1L) > first);
+    }
+}
@@ -0,0 +1,57 @@
+package dev.hanjoon.accountmanager.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MpscRingBufferTest {
+    @Test
+    @DisplayName("Refuses elements beyond its capacity until the consumer takes some")
+    public void capacityTest() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++)
+            Assertions.assertTrue(buffer.offer(i));
+        Assertions.assertFalse(buffer.offer(4));
+        Assertions.assertEquals(0, buffer.poll());
+        Assertions.assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++)
+            Assertions.assertEquals(i, buffer.poll());
+        Assertions.assertNull(buffer.poll());
+        Assertions.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Every element of concurrent producers is taken once, in each producer's order")
+    public void concurrentProducersTest() throws Exception {
+        int producers = 8, perProducer = 100_000;
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            futures.add(executor.submit(() -> {
+                for (long i = 0; i < perProducer; i++)
+                    while (!buffer.offer(new long[] {producer, i}))
+                        Thread.onSpinWait();
+            }));
+        }
+        long[] next = new long[producers];
+        for (int taken = 0; taken < producers * perProducer; ) {
+            long[] element = buffer.poll();
+            if (element == null)
+                continue;
+            Assertions.assertEquals(next[(int) element[0]]++, element[1]);
+            taken++;
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        Assertions.assertTrue(buffer.isEmpty());
+    }
+}
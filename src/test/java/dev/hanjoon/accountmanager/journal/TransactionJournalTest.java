@@ -0,0 +1,119 @@
+package dev.hanjoon.accountmanager.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TransactionJournalTest {
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Entries are passed on once durable and the unapplied ones are read back on open")
+    public void appendAndRecoverTest() throws IOException {
+        List<JournalEntry> durable = new CopyOnWriteArrayList<>();
+        TransactionJournal journal = new TransactionJournal(directory, SEGMENT_BYTES, objectMapper, durable::addAll);
+        Assertions.assertTrue(journal.open(0L).isEmpty());
+        long lsn = 0L;
+        for (long amount = 100L; amount <= 300L; amount += 100L)
+            lsn = journal.append(spend(amount));
+        journal.awaitDurable(lsn);
+        journal.close();
+        Assertions.assertEquals(3L, lsn);
+        Assertions.assertEquals(3, durable.size());
+
+        TransactionJournal reopened = new TransactionJournal(directory, SEGMENT_BYTES, objectMapper, entries -> {});
+        List<JournalEntry> unapplied = reopened.open(1L);
+        Assertions.assertEquals(2, unapplied.size());
+        Assertions.assertEquals(2L, unapplied.get(0).getLsn());
+        Assertions.assertEquals(200L, unapplied.get(0).getAmount());
+        Assertions.assertEquals(300L, unapplied.get(1).getAmount());
+        Assertions.assertEquals(4L, reopened.append(spend(400L)));
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("A torn record ends the segment on recovery")
+    public void tornRecordTest() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, SEGMENT_BYTES, objectMapper, entries -> {});
+        journal.open(0L);
+        journal.append(spend(100L));
+        journal.awaitDurable(journal.append(spend(200L)));
+        journal.close();
+
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long second = 8L + file.readInt();
+            file.seek(second);
+            int secondLength = file.readInt();
+            // the last byte of the second payload
+            file.seek(second + 8L + secondLength - 1);
+            file.write('x');
+        }
+
+        TransactionJournal reopened = new TransactionJournal(directory, SEGMENT_BYTES, objectMapper, entries -> {});
+        List<JournalEntry> unapplied = reopened.open(0L);
+        Assertions.assertEquals(1, unapplied.size());
+        Assertions.assertEquals(100L, unapplied.get(0).getAmount());
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Full segments are rolled and deleted once every entry in them is applied")
+    public void rollAndTruncateTest() throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, 512, objectMapper, entries -> {});
+        journal.open(0L);
+        long lsn = 0L;
+        for (int i = 0; i < 20; i++)
+            lsn = journal.append(spend(100L + i));
+        journal.awaitDurable(lsn);
+        int rolled = segments().size();
+        Assertions.assertTrue(rolled > 2);
+
+        journal.truncate(0L);
+        Assertions.assertEquals(rolled, segments().size());
+        journal.truncate(lsn - 1);
+        Assertions.assertEquals(1, segments().size());
+        journal.close();
+
+        TransactionJournal reopened = new TransactionJournal(directory, 512, objectMapper, entries -> {});
+        List<JournalEntry> unapplied = reopened.open(lsn - 1);
+        Assertions.assertEquals(1, unapplied.size());
+        Assertions.assertEquals(lsn, unapplied.get(0).getLsn());
+        reopened.close();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static JournalEntry spend(long amount) {
+        return JournalEntry.builder()
+                           .type(JournalEntry.Type.SPEND)
+                           .transactionId(amount)
+                           .accountId(1L)
+                           .accountNumber("1000000000")
+                           .clientUsername("journalTestClient")
+                           .amount(amount)
+                           .timestamp(LocalDateTime.now())
+                           .build();
+    }
+}
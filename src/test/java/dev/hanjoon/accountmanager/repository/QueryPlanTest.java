@@ -0,0 +1,84 @@
+package dev.hanjoon.accountmanager.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Explains the statements the repository methods actually send, as Hibernate generates them.
+ * Runs in a context of its own with {@link Recorder} inspecting every statement, on its own Redis port and database.
+ */
+@SpringBootTest(properties = {
+    "spring.redis.port=6382",
+    "spring.datasource.url=jdbc:h2:mem:plan",
+    "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+    + "dev.hanjoon.accountmanager.repository.QueryPlanTest$Recorder"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class QueryPlanTest {
+    public static class Recorder implements StatementInspector {
+        private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    // the plan of the one statement the call sends, with its parameters left unbound
+    private String explain(Runnable call) {
+        Recorder.statements.clear();
+        call.run();
+        Assertions.assertEquals(1, Recorder.statements.size(), Recorder.statements::toString);
+        return jdbcTemplate.queryForObject("explain " + Recorder.statements.get(0), String.class).toUpperCase();
+    }
+
+    @Test
+    @DisplayName("Look up and debit an account by its number through the unique index")
+    public void findByAccountNumberPlanTest() {
+        String plan = explain(() -> accountRepository.findWithClientByAccountNumber("1000000000"));
+        Assertions.assertTrue(plan.contains("UX_ACCOUNT_ACCOUNT_NUMBER"), plan);
+
+        plan = explain(() -> transactionTemplate.executeWithoutResult(status ->
+            accountRepository.withdrawBalance("1000000000", 100L, LocalDateTime.now())));
+        Assertions.assertTrue(plan.contains("UX_ACCOUNT_ACCOUNT_NUMBER"), plan);
+    }
+
+    @Test
+    @DisplayName("List open accounts of a client through the client and status index")
+    public void findOpenAccountsByClientUsernamePlanTest() {
+        String plan = explain(() -> accountRepository.findOpenAccountsByClientUsername("clientWithTenAccount"));
+        Assertions.assertTrue(plan.contains("UX_CLIENT_USERNAME"), plan);
+        Assertions.assertTrue(plan.contains("IX_ACCOUNT_CLIENT_STATUS"), plan);
+    }
+
+    @Test
+    @DisplayName("Read a page of an account's history in creation order through the account and time index")
+    public void findHistoryPagePlanTest() {
+        LocalDateTime before = LocalDateTime.now();
+        String plan = explain(() -> transactionRepository.findHistoryPage(
+            1L, null, before.minusMonths(1), before, Long.MAX_VALUE, PageRequest.of(0, 21)));
+        Assertions.assertTrue(plan.contains("IX_TRANSACTION_ACCOUNT_CREATED"), plan);
+    }
+}
@@ -0,0 +1,51 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.hanjoon.accountmanager.dto.AccountNumberAndBalance;
+import dev.hanjoon.accountmanager.dto.ListAccountResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AccountListCacheServiceTest {
+    private static ListAccountResponse listWithBalance(long balance) {
+        return new ListAccountResponse("cachedClient", List.of(new AccountNumberAndBalance("1000000000", balance)));
+    }
+
+    @Test
+    @DisplayName("Evicting a client while its list is loading neither waits for the load nor keeps its result")
+    public void evictDuringLoadTest() throws Exception {
+        AccountListCacheService cacheService = new AccountListCacheService(new SimpleMeterRegistry(), 100, 60);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<ListAccountResponse> stale = executor.submit(() -> cacheService.get("cachedClient", username -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return listWithBalance(100L);
+        }));
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        cacheService.evictAfterCommit("cachedClient");
+        release.countDown();
+        Assertions.assertEquals(100L, stale.get().getAccounts().get(0).getBalance());
+        executor.shutdown();
+
+        Assertions.assertEquals(200L,
+            cacheService.get("cachedClient", username -> listWithBalance(200L)).getAccounts().get(0).getBalance());
+        Assertions.assertEquals(200L,
+            cacheService.get("cachedClient", username -> listWithBalance(300L)).getAccounts().get(0).getBalance());
+    }
+}
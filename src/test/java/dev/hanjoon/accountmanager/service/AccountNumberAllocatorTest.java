@@ -0,0 +1,52 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@SpringBootTest
+public class AccountNumberAllocatorTest {
+    @Autowired
+    private ShardDirectory shardDirectory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("An allocator started anew carries on after the numbers handed out before")
+    public void restartDoesNotReissueTest() {
+        AccountNumberAllocator before = new AccountNumberAllocator(shardDirectory, jdbcTemplate, 10, false, 0L);
+        long last = 0L;
+        for (int i = 0; i < 15; i++)
+            last = Math.max(last, Long.parseLong(before.allocate()));
+        // as on a restart, with whatever was left of the leased block lost
+        AccountNumberAllocator after = new AccountNumberAllocator(shardDirectory, jdbcTemplate, 10, false, 0L);
+        Assertions.assertTrue(Long.parseLong(after.allocate()) > last);
+    }
+
+    @Test
+    @DisplayName("Permuted sequence numbers stay in range and never collide")
+    public void permutationIsInjectiveTest() {
+        Set<Long> seen = new HashSet<>();
+        for (long sequence = 0; sequence < 200_000; sequence++) {
+            long permuted = AccountNumberAllocator.permute(sequence, 20220801L);
+            Assertions.assertTrue(permuted >= 0 && permuted < AccountNumberAllocator.CAPACITY);
+            Assertions.assertTrue(seen.add(permuted));
+        }
+        long last = AccountNumberAllocator.CAPACITY - 1;
+        Assertions.assertTrue(AccountNumberAllocator.permute(last, 20220801L) < AccountNumberAllocator.CAPACITY);
+    }
+
+    @Test
+    @DisplayName("Consecutive sequence numbers are not mapped to consecutive account numbers")
+    public void permutationScramblesTest() {
+        long first = AccountNumberAllocator.permute(0L, 20220801L);
+        long second = AccountNumberAllocator.permute(1L, 20220801L);
+        Assertions.assertNotEquals(1L, Math.abs(second - first));
+    }
+}
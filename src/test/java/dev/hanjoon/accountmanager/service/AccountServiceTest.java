@@ -4,12 +4,17 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import dev.hanjoon.accountmanager.domain.Account;
 import dev.hanjoon.accountmanager.domain.Client;
@@ -23,6 +28,7 @@ import dev.hanjoon.accountmanager.repository.AccountRepository;
 import dev.hanjoon.accountmanager.repository.ClientRepository;
 import dev.hanjoon.accountmanager.type.AccountStatus;
 import dev.hanjoon.accountmanager.type.ErrorCode;
+import jakarta.persistence.EntityManager;
 
 @SpringBootTest
 public class AccountServiceTest {
@@ -32,6 +38,12 @@ public class AccountServiceTest {
     private AccountRepository accountRepository;
     @Autowired
     private AccountService accountService;
+    @Autowired
+    private ClientCacheService clientCacheService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private EntityManager entityManager;
 
     @Test
     @DisplayName("Create an account for a client without any account")
@@ -109,6 +121,42 @@ public class AccountServiceTest {
         }
     }
 
+    @Test
+    @DisplayName("Create accounts concurrently for the same client without going over the limit")
+    public void createAccountsConcurrentlyTest() throws Exception {
+        String clientUsername = "testConcurrentCreate";
+        clientRepository.save(Client.builder().username(clientUsername).build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<CreateAccountResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            futures.add(executor.submit(() -> accountService.createAccount(
+                new CreateAccountRequest(clientUsername, 0L))));
+        int created = 0, rejected = 0;
+        List<String> accountNumbers = new ArrayList<>();
+        for (Future<CreateAccountResponse> future : futures) {
+            try {
+                accountNumbers.add(future.get().getAccountNumber());
+                created++;
+            } catch (ExecutionException e) {
+                Assertions.assertEquals(ErrorCode.ACCOUNT_LIMIT_REACHED,
+                    ((AccountException) e.getCause()).getErrorCode());
+                rejected++;
+            }
+        }
+        executor.shutdown();
+        Assertions.assertEquals(10, created);
+        Assertions.assertEquals(10, rejected);
+        Assertions.assertEquals(10,
+            clientRepository.findByUsername(clientUsername).get().getActiveAccounts());
+
+        accountService.closeAccount(new CloseAccountRequest(clientUsername, accountNumbers.get(0)));
+        Assertions.assertEquals(9,
+            clientRepository.findByUsername(clientUsername).get().getActiveAccounts());
+        accountService.createAccount(new CreateAccountRequest(clientUsername, 0L));
+        Assertions.assertEquals(10, accountService.listAccount(clientUsername).getAccounts().size());
+    }
+
     @Test
     @DisplayName("Close an account for a client")
     public void closeAccountTest() {
@@ -323,4 +371,57 @@ public class AccountServiceTest {
         Assertions.assertTrue(deleted.isPresent());
         Assertions.assertEquals(AccountStatus.CLOSED, deleted.get().getAccountStatus());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Try to retrieve a list of accounts for non-existing client")
+    public void listAccountForNonExistingClientTest() {
+        try {
+            accountService.listAccount("nonExistingClient");
+            Assertions.fail("Should throw exception");
+        } catch (AccountException e) {
+            Assertions.assertEquals(ErrorCode.CLIENT_NOT_FOUND, e.getErrorCode());
+        }
+    }
+
+    @Test
+    @DisplayName("Look up the same client twice and get the cached one the second time")
+    public void getCachedClientTest() {
+        String clientUsername = "testCachedClient";
+        clientRepository.save(Client.builder().username(clientUsername).build());
+
+        Client first = accountService.getClientByUsername(clientUsername);
+        Client second = accountService.getClientByUsername(clientUsername);
+        Assertions.assertSame(first, second);
+
+        first.setUsername("testCachedClientRenamed");
+        clientRepository.save(first);
+        Assertions.assertEquals("testCachedClientRenamed",
+            accountService.getClientByUsername("testCachedClientRenamed").getUsername());
+        try {
+            accountService.getClientByUsername(clientUsername);
+            Assertions.fail("Should throw exception");
+        } catch (AccountException e) {
+            Assertions.assertEquals(ErrorCode.CLIENT_NOT_FOUND, e.getErrorCode());
+        }
+    }
+
+    @Test
+    @DisplayName("A client cached in a transaction is detached, and a rolled back change keeps it cached")
+    public void cachedClientInTransactionTest() {
+        String clientUsername = "testCachedClientInTransaction";
+        clientRepository.save(Client.builder().username(clientUsername).build());
+
+        Client cached = transactionTemplate.execute(status -> {
+            Client client = accountService.getClientByUsername(clientUsername);
+            Assertions.assertFalse(entityManager.contains(client));
+            return client;
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            Client managed = clientRepository.findByUsername(clientUsername).get();
+            managed.setUsername("testCachedClientRolledBack");
+            entityManager.flush();
+            status.setRollbackOnly();
+        });
+        Assertions.assertSame(cached, accountService.getClientByUsername(clientUsername));
+    }
+}
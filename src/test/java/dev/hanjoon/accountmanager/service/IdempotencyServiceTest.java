@@ -0,0 +1,112 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.repository.AccountRepository;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+@SpringBootTest
+public class IdempotencyServiceTest {
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Test
+    @DisplayName("Retry a spend with the same Idempotency-Key")
+    public void retrySpendWithSameKeyTest() {
+        String clientUsername = "idempotentSpendTestClient";
+        Long initialBalance = 1_000_000L, amountToSpend = 100L;
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+        SpendBalanceRequest request = new SpendBalanceRequest(clientUsername, accountNumber, amountToSpend);
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        SpendBalanceResponse first = idempotencyService.execute("spend", clientUsername, idempotencyKey,
+            request, SpendBalanceResponse.class, () -> transactionService.spendBalance(request));
+        SpendBalanceResponse retried = idempotencyService.execute("spend", clientUsername, idempotencyKey,
+            request, SpendBalanceResponse.class, () -> transactionService.spendBalance(request));
+
+        Assertions.assertEquals(first.getTransactionId(), retried.getTransactionId());
+        Assertions.assertEquals(first.getCreatedAt(), retried.getCreatedAt());
+        Assertions.assertEquals(initialBalance - amountToSpend,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+    }
+
+    @Test
+    @DisplayName("Duplicate arriving while the first request is running waits for its response")
+    public void concurrentDuplicateTest() {
+        String idempotencyKey = UUID.randomUUID().toString();
+        AtomicInteger executions = new AtomicInteger();
+        Runnable request = () -> idempotencyService.execute("test", "caller", idempotencyKey, "request",
+                                                                   Integer.class, () -> {
+            try {
+                Thread.sleep(200L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return executions.incrementAndGet();
+        });
+
+        CompletableFuture.allOf(CompletableFuture.runAsync(request),
+                                CompletableFuture.runAsync(request)).join();
+
+        Assertions.assertEquals(1, executions.get());
+    }
+
+    @Test
+    @DisplayName("Reuse an Idempotency-Key for a different spend or from another client")
+    public void reuseKeyForDifferentRequestTest() {
+        String clientUsername = "idempotentReuseTestClient";
+        String otherClientUsername = "idempotentReuseTestOtherClient";
+        Long initialBalance = 1_000_000L, amountToSpend = 100L;
+        clientRepository.save(Client.builder().username(clientUsername).build());
+        clientRepository.save(Client.builder().username(otherClientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+        String otherAccountNumber = accountService.createAccount(
+            new CreateAccountRequest(otherClientUsername, initialBalance)).getAccountNumber();
+        String idempotencyKey = UUID.randomUUID().toString();
+        SpendBalanceRequest request = new SpendBalanceRequest(clientUsername, accountNumber, amountToSpend);
+        SpendBalanceRequest larger = new SpendBalanceRequest(clientUsername, accountNumber, amountToSpend * 2);
+        SpendBalanceRequest other = new SpendBalanceRequest(otherClientUsername, otherAccountNumber, amountToSpend);
+
+        SpendBalanceResponse first = idempotencyService.execute("spend", clientUsername, idempotencyKey,
+            request, SpendBalanceResponse.class, () -> transactionService.spendBalance(request));
+        TransactionException exception = Assertions.assertThrows(TransactionException.class,
+            () -> idempotencyService.execute("spend", clientUsername, idempotencyKey,
+                larger, SpendBalanceResponse.class, () -> transactionService.spendBalance(larger)));
+        SpendBalanceResponse others = idempotencyService.execute("spend", otherClientUsername, idempotencyKey,
+            other, SpendBalanceResponse.class, () -> transactionService.spendBalance(other));
+
+        Assertions.assertEquals(ErrorCode.IDEMPOTENCY_KEY_REUSED, exception.getErrorCode());
+        Assertions.assertNotEquals(first.getTransactionId(), others.getTransactionId());
+        Assertions.assertEquals(otherAccountNumber, others.getAccountNumber());
+        Assertions.assertEquals(initialBalance - amountToSpend,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+        Assertions.assertEquals(initialBalance - amountToSpend,
+            accountRepository.findByAccountNumber(otherAccountNumber).get().getBalance());
+    }
+}
@@ -0,0 +1,215 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.journal.JournalEntry;
+import dev.hanjoon.accountmanager.journal.TransactionJournal;
+import dev.hanjoon.accountmanager.repository.AccountRepository;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.repository.TransactionRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Runs the journal processor next to the default (direct) one in the shared test context.
+ */
+@SpringBootTest
+public class JournalTransactionProcessorTest {
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private LockService lockService;
+    @Autowired
+    private AccountListCacheService accountListCacheService;
+    @Autowired
+    private JournalEntryWriter journalEntryWriter;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TempDir
+    Path journalDir;
+
+    @Test
+    @DisplayName("Journaled spends and aborts are written to the database and not again after a restart")
+    public void spendAndAbortTest() {
+        String clientUsername = "journalTestClient";
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 10_000L)).getAccountNumber();
+
+        JournalLedger ledger = new JournalLedger();
+        JournalTransactionProcessor processor = processor(ledger, 0, journalDir);
+        processor.start();
+        SpendBalanceResponse spent = processor.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 3_000L));
+        List<SpendBalanceBatchItem> batch = processor.spendBalances(List.of(
+            new SpendBalanceRequest(clientUsername, accountNumber, 5_000L),
+            new SpendBalanceRequest(clientUsername, accountNumber, 5_000L))).getResults();
+        // the second one is refused although the first one may not be in the database yet
+        Assertions.assertNotNull(batch.get(0).getResponse());
+        Assertions.assertEquals(ErrorCode.TRANSACTION_INSUFFICIENT_FUNDS, batch.get(1).getErrorCode());
+        processor.abortTransaction(
+            new AbortTransactionRequest(spent.getTransactionId(), accountNumber, 3_000L));
+        TransactionException e = Assertions.assertThrows(TransactionException.class,
+            () -> processor.abortTransaction(
+                new AbortTransactionRequest(spent.getTransactionId(), accountNumber, 3_000L)));
+        Assertions.assertEquals(ErrorCode.TRANSACTION_NOT_COMMITTED, e.getErrorCode());
+        processor.stop();
+
+        Assertions.assertFalse(ledger.hasPendingChanges(accountNumber));
+        Assertions.assertEquals(5_000L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+        Assertions.assertEquals(TransactionStatus.ABORTED,
+            transactionRepository.findById(spent.getTransactionId()).get().getTransactionStatus());
+        Assertions.assertEquals(TransactionStatus.COMMITTED,
+            transactionService.checkTransaction(batch.get(0).getResponse().getTransactionId())
+                              .getTransactionStatus());
+
+        JournalTransactionProcessor restarted = processor(new JournalLedger(), 0, journalDir);
+        restarted.start();
+        restarted.stop();
+        Assertions.assertEquals(5_000L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+    }
+
+    @Test
+    @DisplayName("An entry the database refuses is quarantined and the entries around it are written")
+    public void quarantineTest() throws Exception {
+        String clientUsername = "journalQuarantineClient";
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 10_000L)).getAccountNumber();
+        Long accountId = accountRepository.findByAccountNumber(accountNumber).get().getId();
+        JournalTransactionProcessor processor = processor(new JournalLedger(), 1, journalDir);
+        processor.start();
+        processor.stop();
+
+        // journaled by a processor that went down before writing them,
+        // the second one for an account the database does not have
+        TransactionJournal journal = new TransactionJournal(journalDir, 1024 * 1024, objectMapper, entries -> {});
+        jdbcTemplate.update("update journal_checkpoint set journal_id = ? where node_id = 1", journal.createId());
+        journal.open(jdbcTemplate.queryForObject(
+            "select applied_lsn from journal_checkpoint where node_id = 1", Long.class));
+        long lastLsn = 0L;
+        for (Long spendAccountId : List.of(accountId, -1L, accountId))
+            lastLsn = journal.append(JournalEntry.builder()
+                                                 .type(JournalEntry.Type.SPEND)
+                                                 .transactionId(System.nanoTime())
+                                                 .accountId(spendAccountId)
+                                                 .accountNumber(accountNumber)
+                                                 .clientUsername(clientUsername)
+                                                 .amount(1_000L)
+                                                 .timestamp(LocalDateTime.now())
+                                                 .build());
+        journal.awaitDurable(lastLsn);
+        journal.close();
+
+        double quarantined = meterRegistry.counter("journal.quarantined").count();
+        JournalLedger ledger = new JournalLedger();
+        JournalTransactionProcessor restarted = processor(ledger, 1, journalDir);
+        restarted.start();
+        restarted.stop();
+
+        Assertions.assertFalse(ledger.hasPendingChanges(accountNumber));
+        Assertions.assertEquals(8_000L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+        Assertions.assertEquals(lastLsn - 1, jdbcTemplate.queryForObject(
+            "select lsn from journal_quarantine where node_id = 1", Long.class));
+        Assertions.assertEquals(lastLsn, jdbcTemplate.queryForObject(
+            "select applied_lsn from journal_checkpoint where node_id = 1", Long.class));
+        Assertions.assertEquals(quarantined + 1, meterRegistry.counter("journal.quarantined").count());
+    }
+
+    @Test
+    @DisplayName("Starting fails when the journal and the database checkpoint were not written together")
+    public void mismatchedJournalTest() {
+        // left running, as if it went down without being stopped
+        JournalTransactionProcessor processor = processor(new JournalLedger(), 2, journalDir);
+        processor.start();
+        try {
+            // the journal directory was lost
+            Assertions.assertThrows(IllegalStateException.class,
+                () -> processor(new JournalLedger(), 2, journalDir.resolve("empty")).start());
+            // the database was, as an in-memory one is on restart
+            Assertions.assertThrows(IllegalStateException.class,
+                () -> processor(new JournalLedger(), 3, journalDir).start());
+        } finally {
+            processor.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("A stop with nothing left to write retires the journal, so a new database can start with the directory")
+    public void retireTest() throws Exception {
+        JournalTransactionProcessor processor = processor(new JournalLedger(), 4, journalDir);
+        processor.start();
+        processor.stop();
+        Assertions.assertNull(new TransactionJournal(journalDir, 1024 * 1024, objectMapper, entries -> {}).readId());
+        Assertions.assertNull(jdbcTemplate.queryForObject(
+            "select journal_id from journal_checkpoint where node_id = 4", String.class));
+
+        // a journal left behind by a stop that went down right after retiring the checkpoint
+        new TransactionJournal(journalDir, 1024 * 1024, objectMapper, entries -> {}).createId();
+        JournalTransactionProcessor restarted = processor(new JournalLedger(), 4, journalDir);
+        restarted.start();
+        restarted.stop();
+
+        // the database did not outlive the process
+        jdbcTemplate.update("delete from journal_checkpoint where node_id = 4");
+        JournalTransactionProcessor fresh = processor(new JournalLedger(), 4, journalDir);
+        fresh.start();
+        fresh.stop();
+    }
+
+    private JournalTransactionProcessor processor(JournalLedger ledger, int nodeId, Path journalDir) {
+        JournalTransactionProcessor processor = new JournalTransactionProcessor(
+            transactionService, accountRepository, transactionRepository, lockService, ledger,
+            accountListCacheService, journalEntryWriter, jdbcTemplate, transactionManager, objectMapper,
+            meterRegistry);
+        ReflectionTestUtils.setField(processor, "journalDir", journalDir.toString());
+        ReflectionTestUtils.setField(processor, "segmentBytes", 1024 * 1024);
+        ReflectionTestUtils.setField(processor, "applyBatchSize", 100);
+        ReflectionTestUtils.setField(processor, "retryBackoffMs", 100L);
+        ReflectionTestUtils.setField(processor, "maxBatchSize", 1000);
+        ReflectionTestUtils.setField(processor, "nodeId", nodeId);
+        return processor;
+    }
+}
@@ -0,0 +1,60 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+public class LocalLockServiceTest {
+    private final LocalLockService lockService = new LocalLockService(1024, 50L);
+
+    @Test
+    @DisplayName("Lock on an account held by another thread times out")
+    public void lockSameAccountTest() {
+        lockService.lock("1000000000");
+        try {
+            CompletableFuture<Void> other = CompletableFuture.runAsync(
+                () -> lockService.lock("1000000000"));
+            TransactionException e = Assertions.assertThrows(TransactionException.class,
+                () -> {
+                    try {
+                        other.join();
+                    } catch (RuntimeException ex) {
+                        throw ex.getCause();
+                    }
+                });
+            Assertions.assertEquals(ErrorCode.ACCOUNT_TRANSACTION_LOCK, e.getErrorCode());
+        } finally {
+            lockService.unlock("1000000000");
+        }
+    }
+
+    @Test
+    @DisplayName("Locks on different accounts do not block each other")
+    public void lockDifferentAccountsTest() {
+        lockService.lock("1000000000");
+        try {
+            CompletableFuture.runAsync(() -> {
+                lockService.lock("1000000001");
+                lockService.unlock("1000000001");
+            }).join();
+        } finally {
+            lockService.unlock("1000000000");
+        }
+    }
+
+    @Test
+    @DisplayName("Lock on an account can be taken again once released")
+    public void relockAfterUnlockTest() {
+        lockService.lock("1000000000");
+        lockService.unlock("1000000000");
+        CompletableFuture.runAsync(() -> {
+            lockService.lock("1000000000");
+            lockService.unlock("1000000000");
+        }).join();
+    }
+}
@@ -0,0 +1,141 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.CheckTransactionResponse;
+import dev.hanjoon.accountmanager.dto.CloseAccountRequest;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Counts the statements each service method sends to the database, so that a lazy association
+ * touched outside of its fetch plan shows up as a failing test rather than as an extra query.
+ */
+@SpringBootTest
+public class QueryCountTest {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private TransactionBatchService transactionBatchService;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    private String createAccount(String clientUsername, Long balance) {
+        if (clientRepository.findByUsername(clientUsername).isEmpty())
+            clientRepository.save(Client.builder().username(clientUsername).build());
+        return accountService.createAccount(
+            new CreateAccountRequest(clientUsername, balance)).getAccountNumber();
+    }
+
+    private long countStatements(Runnable action) {
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Test
+    @DisplayName("Check a transaction with a single query")
+    public void checkTransactionQueryCountTest() {
+        String accountNumber = createAccount("queryCountCheckClient", 1_000L);
+        Long transactionId = transactionService.spendBalance(
+            new SpendBalanceRequest("queryCountCheckClient", accountNumber, 100L)).getTransactionId();
+
+        CheckTransactionResponse[] response = new CheckTransactionResponse[1];
+        Assertions.assertEquals(1, countStatements(
+            () -> response[0] = transactionService.checkTransaction(transactionId)));
+        Assertions.assertEquals(accountNumber, response[0].getAccountNumber());
+    }
+
+    @Test
+    @DisplayName("Spend with one read of the account and its client, one debit and one insert")
+    public void spendBalanceQueryCountTest() {
+        String accountNumber = createAccount("queryCountSpendClient", 1_000L);
+
+        Assertions.assertEquals(3, countStatements(
+            () -> transactionService.spendBalance(
+                new SpendBalanceRequest("queryCountSpendClient", accountNumber, 100L))));
+    }
+
+    @Test
+    @DisplayName("Spend a batch with one debit and a single batched insert")
+    public void spendBalancesQueryCountTest() {
+        String accountNumber = createAccount("queryCountSpendBatchClient", 1_000L);
+
+        Assertions.assertEquals(3, countStatements(
+            () -> transactionBatchService.spendBalances(List.of(
+                new SpendBalanceRequest("queryCountSpendBatchClient", accountNumber, 100L),
+                new SpendBalanceRequest("queryCountSpendBatchClient", accountNumber, 200L),
+                new SpendBalanceRequest("queryCountSpendBatchClient", accountNumber, 300L)))));
+    }
+
+    @Test
+    @DisplayName("Abort with one read of the account, one of the transaction and two updates")
+    public void abortTransactionQueryCountTest() {
+        String accountNumber = createAccount("queryCountAbortClient", 1_000L);
+        Long transactionId = transactionService.spendBalance(
+            new SpendBalanceRequest("queryCountAbortClient", accountNumber, 100L)).getTransactionId();
+
+        Assertions.assertEquals(4, countStatements(
+            () -> transactionService.abortTransaction(
+                new AbortTransactionRequest(transactionId, accountNumber, 100L))));
+    }
+
+    @Test
+    @DisplayName("Abort a batch with one read for all of its transactions")
+    public void abortTransactionsQueryCountTest() {
+        String accountNumber = createAccount("queryCountAbortBatchClient", 1_000L);
+        String otherAccountNumber = createAccount("queryCountAbortBatchClient", 1_000L);
+        Long first = transactionService.spendBalance(
+            new SpendBalanceRequest("queryCountAbortBatchClient", accountNumber, 100L)).getTransactionId();
+        Long second = transactionService.spendBalance(
+            new SpendBalanceRequest("queryCountAbortBatchClient", accountNumber, 200L)).getTransactionId();
+        Long third = transactionService.spendBalance(
+            new SpendBalanceRequest("queryCountAbortBatchClient", otherAccountNumber, 300L)).getTransactionId();
+
+        // one read, then an abort and a credit per account
+        Assertions.assertEquals(5, countStatements(
+            () -> transactionBatchService.abortTransactions(List.of(
+                new AbortTransactionRequest(first, accountNumber, 100L),
+                new AbortTransactionRequest(second, accountNumber, 200L),
+                new AbortTransactionRequest(third, otherAccountNumber, 300L)))));
+    }
+
+    @Test
+    @DisplayName("List accounts with a single query and close one without loading its client")
+    public void listAndCloseAccountQueryCountTest() {
+        String accountNumber = createAccount("queryCountListClient", 0L);
+        createAccount("queryCountListClient", 100L);
+
+        Assertions.assertEquals(1, countStatements(
+            () -> accountService.listAccount("queryCountListClient")));
+        // the client is cached by now: one read of the account, its update and the counter
+        Assertions.assertEquals(3, countStatements(
+            () -> accountService.closeAccount(
+                new CloseAccountRequest("queryCountListClient", accountNumber))));
+    }
+}
@@ -0,0 +1,177 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.exception.TransactionException;
+import dev.hanjoon.accountmanager.journal.JournalEntry;
+import dev.hanjoon.accountmanager.repository.AccountRepository;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.repository.TransactionRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+import dev.hanjoon.accountmanager.type.TransactionStatus;
+
+/**
+ * Runs the engine next to the default (direct) processor in the shared test context.
+ */
+@SpringBootTest
+public class ShardedBalanceEngineTest {
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private AccountListCacheService accountListCacheService;
+    @Autowired
+    private JournalEntryWriter journalEntryWriter;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionMetrics transactionMetrics;
+
+    @Test
+    @DisplayName("Concurrent spends on one account never overdraw it and are all written")
+    public void hotAccountTest() {
+        String clientUsername = "engineTestClient";
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 100_000L)).getAccountNumber();
+
+        ShardedBalanceEngine engine = engine();
+        engine.start();
+        List<CompletableFuture<SpendBalanceResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 1_500; i++)
+            futures.add(CompletableFuture.supplyAsync(() -> engine.submitSpend(
+                new SpendBalanceRequest(clientUsername, accountNumber, 100L))).thenCompose(f -> f));
+        int spent = 0, refused = 0;
+        SpendBalanceResponse last = null;
+        for (CompletableFuture<SpendBalanceResponse> future : futures) {
+            try {
+                last = future.join();
+                spent++;
+            } catch (CompletionException e) {
+                Assertions.assertEquals(ErrorCode.TRANSACTION_INSUFFICIENT_FUNDS,
+                    ((TransactionException) e.getCause()).getErrorCode());
+                refused++;
+            }
+        }
+        Assertions.assertEquals(1_000, spent);
+        Assertions.assertEquals(500, refused);
+        // completed requests are in the database
+        Assertions.assertEquals(0L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+
+        Long transactionId = last.getTransactionId();
+        engine.abortTransaction(new AbortTransactionRequest(transactionId, accountNumber, 100L));
+        TransactionException e = Assertions.assertThrows(TransactionException.class,
+            () -> engine.abortTransaction(new AbortTransactionRequest(transactionId, accountNumber, 100L)));
+        Assertions.assertEquals(ErrorCode.TRANSACTION_NOT_COMMITTED, e.getErrorCode());
+        engine.stop();
+
+        Assertions.assertFalse(engine.hasPendingChanges(accountNumber));
+        Assertions.assertEquals(100L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+        Assertions.assertEquals(TransactionStatus.ABORTED,
+            transactionRepository.findById(transactionId).get().getTransactionStatus());
+    }
+
+    @Test
+    @DisplayName("A spend the database refuses is given back at once, while other changes are still unwritten")
+    public void refusedWriteTest() {
+        String clientUsername = "engineRefusedTestClient";
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 10_000L)).getAccountNumber();
+        long refusedAmount = 1_234L, heldAmount = 500L;
+        CountDownLatch refuse = new CountDownLatch(1);
+        CountDownLatch hold = new CountDownLatch(1);
+        JournalEntryWriter writer = new JournalEntryWriter(jdbcTemplate, transactionMetrics) {
+            @Override
+            public void write(List<JournalEntry> batch) {
+                for (JournalEntry entry : batch) {
+                    if (entry.getAmount() == refusedAmount) {
+                        await(refuse);
+                        throw new DataIntegrityViolationException("Refused by the test");
+                    }
+                    if (entry.getAmount() == heldAmount)
+                        await(hold);
+                }
+                super.write(batch);
+            }
+        };
+
+        ShardedBalanceEngine engine = engine(writer);
+        engine.start();
+        CompletableFuture<SpendBalanceResponse> refused = engine.submitSpend(
+            new SpendBalanceRequest(clientUsername, accountNumber, refusedAmount));
+        CompletableFuture<SpendBalanceResponse> held = engine.submitSpend(
+            new SpendBalanceRequest(clientUsername, accountNumber, heldAmount));
+        refuse.countDown();
+        CompletionException e = Assertions.assertThrows(CompletionException.class, refused::join);
+        Assertions.assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+        // everything but the held spend, which is not written yet
+        CompletableFuture<SpendBalanceResponse> rest = engine.submitSpend(
+            new SpendBalanceRequest(clientUsername, accountNumber, 10_000L - heldAmount));
+        hold.countDown();
+        held.join();
+        rest.join();
+        engine.stop();
+
+        Assertions.assertEquals(0L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ShardedBalanceEngine engine() {
+        return engine(journalEntryWriter);
+    }
+
+    private ShardedBalanceEngine engine(JournalEntryWriter writer) {
+        ShardedBalanceEngine engine = new ShardedBalanceEngine(
+            transactionService, accountRepository, transactionRepository,
+            accountListCacheService, writer, transactionTemplate);
+        ReflectionTestUtils.setField(engine, "shardCount", 4);
+        ReflectionTestUtils.setField(engine, "ringSize", 1024);
+        ReflectionTestUtils.setField(engine, "writeBatchSize", 100);
+        ReflectionTestUtils.setField(engine, "retryBackoffMs", 100L);
+        ReflectionTestUtils.setField(engine, "maxBatchSize", 1000);
+        ReflectionTestUtils.setField(engine, "nodeId", 0);
+        return engine;
+    }
+}
@@ -0,0 +1,178 @@
+package dev.hanjoon.accountmanager.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import dev.hanjoon.accountmanager.controller.ShardAdminController;
+import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
+import dev.hanjoon.accountmanager.dto.AccountNumberAndBalance;
+import dev.hanjoon.accountmanager.dto.CloseAccountRequest;
+import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
+import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
+import dev.hanjoon.accountmanager.exception.AccountException;
+import dev.hanjoon.accountmanager.repository.AccountRepository;
+import dev.hanjoon.accountmanager.repository.ClientRepository;
+import dev.hanjoon.accountmanager.type.ErrorCode;
+
+/**
+ * Runs in a context of its own with two shards, on its own Redis port and databases.
+ */
+@SpringBootTest(properties = {
+    "spring.redis.port=6380",
+    "spring.datasource.url=jdbc:h2:mem:shard0",
+    "account-manager.sharding.enabled=true",
+    "account-manager.sharding.urls=jdbc:h2:mem:shard1",
+    "account-manager.sharding.admin-token=shardingTestToken"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ShardingTest {
+    @Autowired
+    private ClientRepository clientRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private ClientService clientService;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private ShardDirectory shardDirectory;
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+    @Autowired
+    private AccountSlotReleaser accountSlotReleaser;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    @DisplayName("Accounts stay reachable and keep their transactions when moved to another shard")
+    public void moveAccountTest() throws Exception {
+        String clientUsername = "shardingTestClient";
+        clientService.saveClients(List.of(Client.builder().username(clientUsername).build()));
+        int home = shardDirectory.homeShardOf(clientUsername);
+        int other = 1 - home;
+
+        List<String> accountNumbers = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            accountNumbers.add(accountService.createAccount(
+                new CreateAccountRequest(clientUsername, 1_000L)).getAccountNumber());
+        // new accounts are made next to the client's counter
+        for (String accountNumber : accountNumbers)
+            Assertions.assertEquals(home, shardDirectory.shardOf(accountNumber));
+        AccountException e = Assertions.assertThrows(AccountException.class,
+            () -> accountService.createAccount(new CreateAccountRequest(clientUsername, 1_000L)));
+        Assertions.assertEquals(ErrorCode.ACCOUNT_LIMIT_REACHED, e.getErrorCode());
+
+        String moving = accountNumbers.get(0);
+        Long transactionId = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, moving, 100L)).getTransactionId();
+        int slot = ShardDirectory.slotOf(moving);
+        Assertions.assertTrue(shardRebalancer.moveSlots(slot, slot, other) >= 1);
+        Assertions.assertEquals(other, shardDirectory.shardOf(moving));
+        Assertions.assertTrue(shardDirectory.callOn(other,
+            () -> accountRepository.findByAccountNumber(moving)).isPresent());
+        Assertions.assertTrue(shardDirectory.callOn(home,
+            () -> accountRepository.findByAccountNumber(moving)).isEmpty());
+
+        // the list is merged from both shards
+        List<AccountNumberAndBalance> accounts = accountService.listAccount(clientUsername).getAccounts();
+        Assertions.assertEquals(10, accounts.size());
+        Assertions.assertTrue(accounts.stream().anyMatch(
+            account -> account.getAccountNumber().equals(moving) && account.getBalance() == 900L));
+        Assertions.assertEquals(moving, transactionService.checkTransaction(transactionId).getAccountNumber());
+        Assertions.assertEquals(1, transactionService.getTransactionHistory(
+            moving, null, null, null, null, null).getTransactions().size());
+
+        transactionService.abortTransaction(new AbortTransactionRequest(transactionId, moving, 100L));
+        transactionService.spendBalance(new SpendBalanceRequest(clientUsername, moving, 1_000L));
+        Assertions.assertEquals(0L, shardDirectory.callOn(other,
+            () -> accountRepository.findByAccountNumber(moving)).get().getBalance());
+
+        // closing it frees a slot in the counter on the home shard
+        accountService.closeAccount(new CloseAccountRequest(clientUsername, moving));
+        Assertions.assertEquals(9, shardDirectory.callOn(home,
+            () -> clientRepository.findByUsername(clientUsername)).get().getActiveAccounts());
+        accountService.createAccount(new CreateAccountRequest(clientUsername, 1_000L));
+        Assertions.assertEquals(10, accountService.listAccount(clientUsername).getAccounts().size());
+    }
+
+    @Test
+    @DisplayName("Slots are moved through the admin endpoint with the admin token only")
+    public void moveSlotsEndpointTest() throws Exception {
+        String clientUsername = "shardingEndpointTestClient";
+        clientService.saveClients(List.of(Client.builder().username(clientUsername).build()));
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 1_000L)).getAccountNumber();
+        int slot = ShardDirectory.slotOf(accountNumber);
+        int other = 1 - shardDirectory.shardOf(accountNumber);
+        String move = "{\"fromSlot\":" + slot + ", \"toSlot\":" + slot + ", \"targetShard\":" + other + "}";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/shard/slots")
+                                              .contentType("application/json")
+                                              .content(move))
+               .andExpect(MockMvcResultMatchers.status().isForbidden());
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/shard/slots")
+                                              .header(ShardAdminController.TOKEN_HEADER, "wrongToken")
+                                              .contentType("application/json")
+                                              .content(move))
+               .andExpect(MockMvcResultMatchers.status().isForbidden());
+        Assertions.assertEquals(1 - other, shardDirectory.shardOf(accountNumber));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/shard/slots")
+                                              .header(ShardAdminController.TOKEN_HEADER, "shardingTestToken")
+                                              .contentType("application/json")
+                                              .content("{\"fromSlot\":0, \"toSlot\":1024, \"targetShard\":0}"))
+               .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/admin/shard/slots")
+                                              .header(ShardAdminController.TOKEN_HEADER, "shardingTestToken")
+                                              .contentType("application/json")
+                                              .content(move))
+               .andExpect(MockMvcResultMatchers.status().isOk())
+               .andExpect(MockMvcResultMatchers.jsonPath("$.targetShard").value(other))
+               .andExpect(MockMvcResultMatchers.jsonPath("$.movedAccounts").value(Matchers.greaterThanOrEqualTo(1)));
+        Assertions.assertEquals(other, shardDirectory.shardOf(accountNumber));
+    }
+
+    @Test
+    @DisplayName("A slot release left pending on the account's shard is retried once and only once")
+    public void retryPendingReleaseTest() {
+        String clientUsername = "shardingReleaseTestClient";
+        clientService.saveClients(List.of(Client.builder().username(clientUsername).build()));
+        accountService.createAccount(new CreateAccountRequest(clientUsername, 1_000L));
+        accountService.createAccount(new CreateAccountRequest(clientUsername, 1_000L));
+        int home = shardDirectory.homeShardOf(clientUsername);
+        Long clientId = shardDirectory.callOn(home,
+            () -> clientRepository.findByUsername(clientUsername)).get().getId();
+
+        // as if the release after closing an account on the other shard had failed, then again after it went through
+        for (int attempt = 0; attempt < 2; attempt++) {
+            shardDirectory.runOn(1 - home, () -> jdbcTemplate.update(
+                "insert into pending_slot_release (account_id, client_id, client_username, created_at)"
+                + " values (?, ?, ?, ?)", -1L, clientId, clientUsername, LocalDateTime.now()));
+            accountSlotReleaser.retryPending(0L);
+            Assertions.assertEquals(1, shardDirectory.callOn(home,
+                () -> clientRepository.findByUsername(clientUsername)).get().getActiveAccounts());
+            Assertions.assertEquals(0, shardDirectory.callOn(1 - home, () -> jdbcTemplate.queryForObject(
+                "select count(*) from pending_slot_release", Integer.class)));
+        }
+    }
+}
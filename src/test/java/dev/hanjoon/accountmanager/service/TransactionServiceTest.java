@@ -1,18 +1,36 @@
 package dev.hanjoon.accountmanager.service;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import dev.hanjoon.accountmanager.domain.Account;
 import dev.hanjoon.accountmanager.domain.Client;
+import dev.hanjoon.accountmanager.dto.AbortTransactionBatchItem;
 import dev.hanjoon.accountmanager.dto.AbortTransactionRequest;
 import dev.hanjoon.accountmanager.dto.CloseAccountRequest;
 import dev.hanjoon.accountmanager.dto.CreateAccountRequest;
 import dev.hanjoon.accountmanager.dto.CreateAccountResponse;
+import dev.hanjoon.accountmanager.dto.SpendBalanceBatchItem;
 import dev.hanjoon.accountmanager.dto.SpendBalanceRequest;
 import dev.hanjoon.accountmanager.dto.SpendBalanceResponse;
+import dev.hanjoon.accountmanager.dto.TransactionExportRecord;
+import dev.hanjoon.accountmanager.dto.TransactionHistoryItem;
+import dev.hanjoon.accountmanager.dto.TransactionHistoryResponse;
 import dev.hanjoon.accountmanager.exception.AccountException;
 import dev.hanjoon.accountmanager.exception.TransactionException;
 import dev.hanjoon.accountmanager.repository.AccountRepository;
@@ -34,6 +52,12 @@ public class TransactionServiceTest {
     private AccountService accountService;
     @Autowired
     private TransactionService transactionService;
+    @Autowired
+    private TransactionBatchService transactionBatchService;
+    @Autowired
+    private TransactionExportService transactionExportService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @Test
     @DisplayName("Spend some balance from an account")
@@ -459,4 +483,256 @@ public class TransactionServiceTest {
         Assertions.assertEquals(TransactionStatus.ABORTED,
             transactionRepository.findById(transactionId).get().getTransactionStatus());
     }
+
+    @Test
+    @DisplayName("Spend concurrently from the same account without losing any update")
+    public void spendBalanceConcurrentlyTest() throws Exception {
+        String clientUsername = "spendConcurrentlyTestClient";
+        Long initialBalance = 10_000L, amountToSpend = 100L;
+        int numSpends = 20;
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        CreateAccountResponse account = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance));
+        String accountNumber = account.getAccountNumber();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<SpendBalanceResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < numSpends; i++)
+            futures.add(executor.submit(() -> transactionService.spendBalance(
+                new SpendBalanceRequest(
+                    clientUsername,
+                    accountNumber,
+                    amountToSpend))));
+        for (Future<SpendBalanceResponse> future : futures)
+            Assertions.assertEquals(TransactionStatus.COMMITTED, future.get().getTransactionStatus());
+        executor.shutdown();
+
+        Assertions.assertEquals(initialBalance - numSpends * amountToSpend,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+    }
+
+    @Test
+    @DisplayName("Saving an account read before a spend fails instead of overwriting the spend")
+    public void saveStaleAccountAfterSpendTest() {
+        String clientUsername = "saveStaleAccountAfterSpendTestClient";
+        Long initialBalance = 1_000_000L, amountToSpend = 100L;
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        CreateAccountResponse account = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance));
+        String accountNumber = account.getAccountNumber();
+        Account stale = accountRepository.findByAccountNumber(accountNumber).get();
+
+        transactionService.spendBalance(
+            new SpendBalanceRequest(
+                clientUsername,
+                accountNumber,
+                amountToSpend));
+        stale.setBalance(initialBalance);
+
+        Assertions.assertThrows(OptimisticLockingFailureException.class,
+            () -> accountRepository.save(stale));
+        Assertions.assertEquals(initialBalance - amountToSpend,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+    }
+
+    @Test
+    @DisplayName("Spend from several accounts in one batch with some requests failing")
+    public void spendBalancesInBatchTest() {
+        String clientUsername = "spendBatchTestClient";
+        String otherClientUsername = "spendBatchTestOtherClient";
+        Long initialBalance = 1_000L;
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        clientRepository.save(
+            Client.builder().username(otherClientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+        String otherAccountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+
+        List<SpendBalanceBatchItem> results = transactionBatchService.spendBalances(List.of(
+            new SpendBalanceRequest(clientUsername, accountNumber, 600L),
+            new SpendBalanceRequest(clientUsername, otherAccountNumber, 100L),
+            new SpendBalanceRequest(clientUsername, accountNumber, 600L),
+            new SpendBalanceRequest(otherClientUsername, otherAccountNumber, 100L),
+            new SpendBalanceRequest(clientUsername, "0999999997", 100L),
+            new SpendBalanceRequest(clientUsername, accountNumber, 400L))).getResults();
+
+        Assertions.assertEquals(6, results.size());
+        Assertions.assertEquals(TransactionStatus.COMMITTED, results.get(0).getResponse().getTransactionStatus());
+        Assertions.assertEquals(TransactionStatus.COMMITTED, results.get(1).getResponse().getTransactionStatus());
+        Assertions.assertEquals(ErrorCode.TRANSACTION_INSUFFICIENT_FUNDS, results.get(2).getErrorCode());
+        Assertions.assertEquals(ErrorCode.ACCOUNT_OWNED_BY_OTHER_CLIENT, results.get(3).getErrorCode());
+        Assertions.assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, results.get(4).getErrorCode());
+        Assertions.assertEquals(TransactionStatus.COMMITTED, results.get(5).getResponse().getTransactionStatus());
+        Assertions.assertEquals(0L,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+        Assertions.assertEquals(initialBalance - 100L,
+            accountRepository.findByAccountNumber(otherAccountNumber).get().getBalance());
+        Assertions.assertEquals(400L,
+            transactionRepository.findById(results.get(5).getResponse().getTransactionId()).get().getAmount());
+    }
+
+    @Test
+    @DisplayName("Abort transactions of several accounts in one batch with some requests failing")
+    public void abortTransactionsInBatchTest() {
+        String clientUsername = "abortBatchTestClient";
+        Long initialBalance = 10_000L;
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+        String otherAccountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+        Long first = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 100L)).getTransactionId();
+        Long second = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 200L)).getTransactionId();
+        Long third = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, otherAccountNumber, 300L)).getTransactionId();
+
+        List<AbortTransactionBatchItem> results = transactionBatchService.abortTransactions(List.of(
+            new AbortTransactionRequest(first, accountNumber, 100L),
+            new AbortTransactionRequest(third, otherAccountNumber, 999L),
+            new AbortTransactionRequest(second, accountNumber, 200L),
+            new AbortTransactionRequest(first, accountNumber, 100L),
+            new AbortTransactionRequest(third, accountNumber, 300L),
+            new AbortTransactionRequest(-1L, accountNumber, 100L))).getResults();
+
+        Assertions.assertEquals(TransactionStatus.ABORTED, results.get(0).getResponse().getTransactionStatus());
+        Assertions.assertEquals(ErrorCode.TRANSACTION_INVALID_AMOUNT, results.get(1).getErrorCode());
+        Assertions.assertEquals(TransactionStatus.ABORTED, results.get(2).getResponse().getTransactionStatus());
+        Assertions.assertEquals(ErrorCode.TRANSACTION_NOT_COMMITTED, results.get(3).getErrorCode());
+        Assertions.assertEquals(ErrorCode.TRANSACTION_ACCOUNT_NOT_MATCHED, results.get(4).getErrorCode());
+        Assertions.assertEquals(ErrorCode.TRANSACTION_NOT_FOUND, results.get(5).getErrorCode());
+        Assertions.assertEquals(initialBalance,
+            accountRepository.findByAccountNumber(accountNumber).get().getBalance());
+        Assertions.assertEquals(initialBalance - 300L,
+            accountRepository.findByAccountNumber(otherAccountNumber).get().getBalance());
+        Assertions.assertEquals(TransactionStatus.ABORTED,
+            transactionRepository.findById(second).get().getTransactionStatus());
+        Assertions.assertEquals(TransactionStatus.COMMITTED,
+            transactionRepository.findById(third).get().getTransactionStatus());
+    }
+
+    @Test
+    @DisplayName("List accounts again after spending and aborting on them")
+    public void listAccountAfterTransactionsTest() {
+        String clientUsername = "listAfterTransactionsTestClient";
+        Long initialBalance = 10_000L;
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, initialBalance)).getAccountNumber();
+        Assertions.assertEquals(initialBalance,
+            accountService.listAccount(clientUsername).getAccounts().get(0).getBalance());
+
+        Long transactionId = transactionService.spendBalance(
+            new SpendBalanceRequest(clientUsername, accountNumber, 1_000L)).getTransactionId();
+        Assertions.assertEquals(initialBalance - 1_000L,
+            accountService.listAccount(clientUsername).getAccounts().get(0).getBalance());
+
+        transactionBatchService.spendBalances(List.of(
+            new SpendBalanceRequest(clientUsername, accountNumber, 2_000L)));
+        Assertions.assertEquals(initialBalance - 3_000L,
+            accountService.listAccount(clientUsername).getAccounts().get(0).getBalance());
+
+        transactionBatchService.abortTransactions(List.of(
+            new AbortTransactionRequest(transactionId, accountNumber, 1_000L)));
+        Assertions.assertEquals(initialBalance - 2_000L,
+            accountService.listAccount(clientUsername).getAccounts().get(0).getBalance());
+
+        Assertions.assertThrows(TransactionException.class,
+            () -> transactionService.spendBalance(
+                new SpendBalanceRequest(clientUsername, accountNumber, 100_000L)));
+        accountService.createAccount(new CreateAccountRequest(clientUsername, 0L));
+        Assertions.assertEquals(2, accountService.listAccount(clientUsername).getAccounts().size());
+    }
+
+    @Test
+    @DisplayName("Page through the transaction history of an account with and without filters")
+    public void transactionHistoryTest() {
+        String clientUsername = "transactionHistoryTestClient";
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 10_000L)).getAccountNumber();
+        List<Long> transactionIds = new ArrayList<>();
+        for (long amount = 100L; amount <= 500L; amount += 100L)
+            transactionIds.add(transactionService.spendBalance(
+                new SpendBalanceRequest(clientUsername, accountNumber, amount)).getTransactionId());
+        transactionService.abortTransaction(
+            new AbortTransactionRequest(transactionIds.get(1), accountNumber, 200L));
+
+        List<Long> listed = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TransactionHistoryResponse page = transactionService.getTransactionHistory(
+                accountNumber, null, null, null, cursor, 2);
+            page.getTransactions().forEach(t -> listed.add(t.getTransactionId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        Assertions.assertEquals(3, pages);
+        Assertions.assertEquals(List.of(transactionIds.get(4), transactionIds.get(3), transactionIds.get(2),
+                                        transactionIds.get(1), transactionIds.get(0)), listed);
+
+        List<TransactionHistoryItem> aborted = transactionService.getTransactionHistory(
+            accountNumber, TransactionStatus.ABORTED, null, null, null, null).getTransactions();
+        Assertions.assertEquals(1, aborted.size());
+        Assertions.assertEquals(transactionIds.get(1), aborted.get(0).getTransactionId());
+        Assertions.assertNotNull(aborted.get(0).getAbortedAt());
+
+        LocalDateTime third = transactionRepository.findById(transactionIds.get(2)).get().getCreatedAt();
+        Assertions.assertEquals(3, transactionService.getTransactionHistory(
+            accountNumber, null, third, null, null, null).getTransactions().size());
+        Assertions.assertEquals(2, transactionService.getTransactionHistory(
+            accountNumber, null, null, third, null, null).getTransactions().size());
+
+        try {
+            transactionService.getTransactionHistory(accountNumber, null, null, null, "not-a-cursor", null);
+            Assertions.fail("Should throw exception");
+        } catch (TransactionException e) {
+            Assertions.assertEquals(ErrorCode.TRANSACTION_INVALID_CURSOR, e.getErrorCode());
+        }
+        try {
+            transactionService.getTransactionHistory("0999999997", null, null, null, null, null);
+            Assertions.fail("Should throw exception");
+        } catch (AccountException e) {
+            Assertions.assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getErrorCode());
+        }
+    }
+
+    @Test
+    @DisplayName("Export the transactions of a time range as one JSON object per line")
+    public void exportTransactionsTest() throws Exception {
+        String clientUsername = "exportTransactionsTestClient";
+        clientRepository.save(
+            Client.builder().username(clientUsername).build());
+        String accountNumber = accountService.createAccount(
+            new CreateAccountRequest(clientUsername, 10_000L)).getAccountNumber();
+        LocalDateTime from = LocalDateTime.now().minusSeconds(1);
+        List<Long> transactionIds = new ArrayList<>();
+        for (long amount = 100L; amount <= 300L; amount += 100L)
+            transactionIds.add(transactionService.spendBalance(
+                new SpendBalanceRequest(clientUsername, accountNumber, amount)).getTransactionId());
+        LocalDateTime to = LocalDateTime.now().plusSeconds(1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = transactionExportService.exportTransactions(from, to, out);
+
+        List<TransactionExportRecord> records = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n"))
+            records.add(objectMapper.readValue(line, TransactionExportRecord.class));
+        Assertions.assertEquals(written, records.size());
+        List<TransactionExportRecord> ours = records.stream()
+            .filter(r -> accountNumber.equals(r.getAccountNumber())).toList();
+        Assertions.assertEquals(transactionIds, ours.stream().map(TransactionExportRecord::getTransactionId).toList());
+        Assertions.assertEquals(200L, ours.get(1).getAmount());
+        Assertions.assertEquals(TransactionStatus.COMMITTED, ours.get(1).getTransactionStatus());
+        Assertions.assertEquals(0L, transactionExportService.exportTransactions(to, to.plusDays(1), new ByteArrayOutputStream()));
+    }
 }